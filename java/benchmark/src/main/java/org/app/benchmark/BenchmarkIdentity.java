@@ -0,0 +1,66 @@
+package org.app.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.Date;
+
+import org.app.config.Config;
+import org.app.user.CAEnrollment;
+import org.app.user.UserContext;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * 基准测试使用的自签名身份，既作为客户端管理员，也作为桩节点的背书身份和通道MSP的根证书，
+ * 不需要CA或crypto-config
+ */
+public class BenchmarkIdentity {
+
+	private final KeyPair keyPair;
+	private final String certPem;
+
+	public BenchmarkIdentity(String commonName) throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(new ECGenParameterSpec("secp256r1"));
+		keyPair = generator.generateKeyPair();
+
+		long now = System.currentTimeMillis();
+		X500Name name = new X500Name("CN=" + commonName);
+		X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(now),
+				new Date(now - 60 * 1000), new Date(now + 365L * 24 * 60 * 60 * 1000), name, keyPair.getPublic());
+		builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+		X509CertificateHolder certificate = builder
+				.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate()));
+		certPem = "-----BEGIN CERTIFICATE-----\n"
+				+ Base64.getMimeEncoder(64, "\n".getBytes(UTF_8)).encodeToString(certificate.getEncoded())
+				+ "\n-----END CERTIFICATE-----\n";
+	}
+
+	public KeyPair getKeyPair() {
+		return keyPair;
+	}
+
+	public String getCertPem() {
+		return certPem;
+	}
+
+	// 以该身份构造Org1MSP的用户
+	public UserContext newUserContext(String name, String affiliation) {
+		UserContext userContext = new UserContext();
+		userContext.setName(name);
+		userContext.setAffiliation(affiliation);
+		userContext.setMspId(Config.ORG1_MSP);
+		userContext.setEnrollment(new CAEnrollment(keyPair.getPrivate(), certPem));
+		return userContext;
+	}
+}
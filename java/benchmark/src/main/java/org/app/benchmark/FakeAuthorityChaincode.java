@@ -0,0 +1,46 @@
+package org.app.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.List;
+
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.Response;
+import org.json.JSONObject;
+
+/**
+ * cc_authority的内存实现
+ */
+public class FakeAuthorityChaincode implements FakeChaincode {
+
+	@Override
+	public Response invoke(FakeLedger.Simulator stub, String function, List<String> args) {
+		switch (function) {
+		case "initOrg":
+			if (args.size() != 5)
+				return StubPeer.error("Incorrect number of arguments. Expecting 5");
+			for (int i = 0; i < args.size(); i++) {
+				if (args.get(i).isEmpty())
+					return StubPeer.error("argument " + (i + 1) + " must be a non-empty string");
+			}
+			String record = "{\"docType\":\"org\",\"item_num\":" + JSONObject.quote(args.get(0))
+					+ ",\"org_name\":" + JSONObject.quote(args.get(1).toLowerCase())
+					+ ",\"identity_prefix\":" + JSONObject.quote(args.get(2))
+					+ ",\"public_key\":" + JSONObject.quote(args.get(3))
+					+ ",\"authority\":" + JSONObject.quote(args.get(4)) + "}";
+			stub.putState(args.get(0), record.getBytes(UTF_8));
+			return StubPeer.success(new byte[0]);
+		case "queryInfoByOrg":
+			if (args.isEmpty())
+				return StubPeer.error("Incorrect number of arguments. Expecting 1");
+			String orgName = args.get(0).toLowerCase();
+			return StubPeer.success(FakeHashChaincode.queryResult(stub.query((key, value) -> {
+				JSONObject org = new JSONObject(new String(value, UTF_8));
+				return "org".equals(org.optString("docType")) && orgName.equals(org.optString("org_name"));
+			})));
+		case "queryAllOrgs":
+			return StubPeer.success(FakeHashChaincode.queryResult(stub.query((key, value) -> true)));
+		default:
+			return StubPeer.error("Received unknown function invocation");
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package org.app.benchmark;
+
+import java.util.List;
+
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.Response;
+
+/**
+ * 假网络中链码的Java实现，与network_resources下Go链码的函数和返回格式保持一致
+ */
+public interface FakeChaincode {
+
+	Response invoke(FakeLedger.Simulator stub, String function, List<String> args);
+}
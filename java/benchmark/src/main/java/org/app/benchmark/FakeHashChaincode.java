@@ -0,0 +1,94 @@
+package org.app.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.Response;
+import org.json.JSONObject;
+
+/**
+ * cc_hash的内存实现
+ */
+public class FakeHashChaincode implements FakeChaincode {
+
+	@Override
+	public Response invoke(FakeLedger.Simulator stub, String function, List<String> args) {
+		switch (function) {
+		case "invokeMappingDataHash":
+			if (args.size() != 2)
+				return StubPeer.error("Incorrect number of arguments. Expecting 2");
+			if (args.get(0).isEmpty() || args.get(1).isEmpty())
+				return StubPeer.error("arguments must be non-empty strings");
+			putIdentity(stub, args.get(0), args.get(1));
+			return StubPeer.success(new byte[0]);
+		case "invokeMappingDataHashBatch":
+			if (args.isEmpty() || args.size() % 2 != 0)
+				return StubPeer.error("Incorrect number of arguments. Expecting identifier/hash pairs");
+			for (int i = 0; i < args.size(); i++) {
+				if (args.get(i).isEmpty())
+					return StubPeer.error("argument " + (i + 1) + " must be a non-empty string");
+			}
+			for (int i = 0; i < args.size(); i += 2)
+				putIdentity(stub, args.get(i), args.get(i + 1));
+			return StubPeer.success(new byte[0]);
+		case "getHashByIdentifier":
+			if (args.size() != 1)
+				return StubPeer.error("Incorrect number of arguments. Expecting 1");
+			String hash = getHash(stub, args.get(0));
+			return StubPeer.success(hash == null ? new byte[0] : hash.getBytes(UTF_8));
+		case "getHashesByIdentifiers":
+			if (args.isEmpty())
+				return StubPeer.error("Incorrect number of arguments. Expecting at least 1");
+			// Go的json.Marshal按键排序输出map
+			Map<String, String> hashes = new TreeMap<>();
+			for (String identifier : args) {
+				String found = getHash(stub, identifier);
+				if (found != null)
+					hashes.put(identifier, found);
+			}
+			StringBuilder buffer = new StringBuilder("{");
+			for (Map.Entry<String, String> entry : hashes.entrySet()) {
+				if (buffer.length() > 1)
+					buffer.append(",");
+				buffer.append(JSONObject.quote(entry.getKey())).append(":").append(JSONObject.quote(entry.getValue()));
+			}
+			return StubPeer.success(buffer.append("}").toString().getBytes(UTF_8));
+		case "queryHashByIdentifier":
+			if (args.isEmpty())
+				return StubPeer.error("Incorrect number of arguments. Expecting 1");
+			return StubPeer.success(queryResult(stub.query((key, value) -> {
+				JSONObject record = new JSONObject(new String(value, UTF_8));
+				return "identity".equals(record.optString("docType"))
+						&& args.get(0).equals(record.optString("identifier"));
+			})));
+		default:
+			return StubPeer.error("Received unknown function invocation");
+		}
+	}
+
+	private static void putIdentity(FakeLedger.Simulator stub, String identifier, String hash) {
+		String record = "{\"docType\":\"identity\",\"identifier\":" + JSONObject.quote(identifier)
+				+ ",\"mappingData_hash\":" + JSONObject.quote(hash) + "}";
+		stub.putState(identifier, record.getBytes(UTF_8));
+	}
+
+	private static String getHash(FakeLedger.Simulator stub, String identifier) {
+		byte[] record = stub.getState(identifier);
+		return record == null ? null : new JSONObject(new String(record, UTF_8)).getString("mappingData_hash");
+	}
+
+	// 与Go链码constructQueryResponseFromIterator的输出格式一致
+	static byte[] queryResult(Map<String, byte[]> results) {
+		StringBuilder buffer = new StringBuilder("[");
+		for (Map.Entry<String, byte[]> entry : results.entrySet()) {
+			if (buffer.length() > 1)
+				buffer.append(",");
+			buffer.append("{\"Key\":\"").append(entry.getKey()).append("\", \"Record\":")
+					.append(new String(entry.getValue(), UTF_8)).append("}");
+		}
+		return buffer.append("]").toString().getBytes(UTF_8);
+	}
+}
@@ -0,0 +1,302 @@
+package org.app.benchmark;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.protos.common.Common.Block;
+import org.hyperledger.fabric.protos.common.Common.BlockData;
+import org.hyperledger.fabric.protos.common.Common.BlockHeader;
+import org.hyperledger.fabric.protos.common.Common.ChannelHeader;
+import org.hyperledger.fabric.protos.common.Common.Envelope;
+import org.hyperledger.fabric.protos.common.Common.HeaderType;
+import org.hyperledger.fabric.protos.common.Common.Payload;
+import org.hyperledger.fabric.protos.ledger.rwset.Rwset.NsReadWriteSet;
+import org.hyperledger.fabric.protos.ledger.rwset.Rwset.TxReadWriteSet;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset.KVRWSet;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset.KVRead;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset.KVWrite;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset.Version;
+import org.hyperledger.fabric.protos.peer.FabricProposal.ChaincodeAction;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.ProposalResponsePayload;
+import org.hyperledger.fabric.protos.peer.FabricTransaction.ChaincodeActionPayload;
+import org.hyperledger.fabric.protos.peer.FabricTransaction.Transaction;
+import org.hyperledger.fabric.protos.peer.FabricTransaction.TransactionAction;
+import org.hyperledger.fabric.protos.peer.FabricTransaction.TxValidationCode;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * 假网络的账本：内存世界状态、区块链以及orderer的出块逻辑。
+ * 交易按BatchSize/BatchTimeout切块，提交时按读集版本做MVCC校验，与peer的提交语义一致。
+ */
+public class FakeLedger {
+
+	private final String channelName;
+	private final int batchSize;
+	private final long batchTimeout;
+
+	private final List<Block> blocks = new ArrayList<>();
+	// 命名空间（链码名） -> 键 -> 带版本的值
+	private final Map<String, TreeMap<String, VersionedValue>> state = new LinkedHashMap<>();
+	private final Set<String> txIds = new HashSet<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final List<Consumer<Block>> listeners = new CopyOnWriteArrayList<>();
+
+	private final List<Envelope> pending = new ArrayList<>();
+	private final ScheduledExecutorService cutter = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "fake-orderer-cutter");
+		t.setDaemon(true);
+		return t;
+	});
+	private ScheduledFuture<?> batchTimer;
+
+	public FakeLedger(BenchmarkIdentity identity, String channelName, int batchSize, long batchTimeout) {
+		this.channelName = channelName;
+		this.batchSize = batchSize;
+		this.batchTimeout = batchTimeout;
+		blocks.add(StubPeer.newConfigBlock(identity, channelName));
+	}
+
+	public String getChannelName() {
+		return channelName;
+	}
+
+	public void addListener(Consumer<Block> listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Consumer<Block> listener) {
+		listeners.remove(listener);
+	}
+
+	public long getHeight() {
+		lock.readLock().lock();
+		try {
+			return blocks.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Block getBlock(long number) {
+		lock.readLock().lock();
+		try {
+			return number < blocks.size() ? blocks.get((int) number) : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// 排序：交易进入待出块队列，达到BatchSize立即出块，否则在首笔交易到达BatchTimeout后出块
+	public synchronized void order(Envelope envelope) {
+		pending.add(envelope);
+		if (pending.size() >= batchSize) {
+			cut();
+		} else if (pending.size() == 1) {
+			batchTimer = cutter.schedule(() -> {
+				synchronized (FakeLedger.this) {
+					if (!pending.isEmpty())
+						cut();
+				}
+			}, batchTimeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void cut() {
+		if (batchTimer != null) {
+			batchTimer.cancel(false);
+			batchTimer = null;
+		}
+		List<Envelope> batch = new ArrayList<>(pending);
+		pending.clear();
+		Block block = commit(batch);
+		for (Consumer<Block> listener : listeners) {
+			try {
+				listener.accept(block);
+			} catch (RuntimeException e) {
+				Logger.getLogger(FakeLedger.class.getName()).log(Level.WARNING, "Block listener failed", e);
+			}
+		}
+	}
+
+	// 验证并提交一个区块，无效交易保留在区块中但不修改世界状态
+	private Block commit(List<Envelope> batch) {
+		lock.writeLock().lock();
+		try {
+			long number = blocks.size();
+			byte[] filter = new byte[batch.size()];
+			BlockData.Builder data = BlockData.newBuilder();
+			for (int i = 0; i < batch.size(); i++) {
+				filter[i] = (byte) validateAndApply(batch.get(i), number, i).getNumber();
+				data.addData(batch.get(i).toByteString());
+			}
+			BlockHeader header = BlockHeader.newBuilder().setNumber(number)
+					.setPreviousHash(hash(blocks.get(blocks.size() - 1).getHeader().toByteString()))
+					.setDataHash(hash(data.build().toByteString())).build();
+			Block block = Block.newBuilder().setHeader(header).setData(data)
+					.setMetadata(StubPeer.blockMetadata(filter)).build();
+			blocks.add(block);
+			return block;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private TxValidationCode validateAndApply(Envelope envelope, long blockNum, long txNum) {
+		List<NsReadWriteSet> nsRwSets = new ArrayList<>();
+		try {
+			Payload payload = Payload.parseFrom(envelope.getPayload());
+			ChannelHeader channelHeader = ChannelHeader.parseFrom(payload.getHeader().getChannelHeader());
+			if (channelHeader.getType() != HeaderType.ENDORSER_TRANSACTION_VALUE)
+				return TxValidationCode.UNKNOWN_TX_TYPE;
+			if (!txIds.add(channelHeader.getTxId()))
+				return TxValidationCode.DUPLICATE_TXID;
+			for (TransactionAction action : Transaction.parseFrom(payload.getData()).getActionsList()) {
+				ChaincodeActionPayload actionPayload = ChaincodeActionPayload.parseFrom(action.getPayload());
+				ProposalResponsePayload responsePayload = ProposalResponsePayload
+						.parseFrom(actionPayload.getAction().getProposalResponsePayload());
+				ChaincodeAction chaincodeAction = ChaincodeAction.parseFrom(responsePayload.getExtension());
+				nsRwSets.addAll(TxReadWriteSet.parseFrom(chaincodeAction.getResults()).getNsRwsetList());
+			}
+		} catch (Exception e) {
+			return TxValidationCode.BAD_PAYLOAD;
+		}
+
+		List<KVRWSet> rwSets = new ArrayList<>();
+		try {
+			for (NsReadWriteSet nsRwSet : nsRwSets)
+				rwSets.add(KVRWSet.parseFrom(nsRwSet.getRwset()));
+		} catch (Exception e) {
+			return TxValidationCode.BAD_RWSET;
+		}
+		for (int i = 0; i < nsRwSets.size(); i++) {
+			TreeMap<String, VersionedValue> namespace = state.get(nsRwSets.get(i).getNamespace());
+			for (KVRead read : rwSets.get(i).getReadsList()) {
+				VersionedValue current = namespace == null ? null : namespace.get(read.getKey());
+				if (!sameVersion(current, read))
+					return TxValidationCode.MVCC_READ_CONFLICT;
+			}
+		}
+		for (int i = 0; i < nsRwSets.size(); i++) {
+			TreeMap<String, VersionedValue> namespace = state.computeIfAbsent(nsRwSets.get(i).getNamespace(),
+					ns -> new TreeMap<>());
+			for (KVWrite write : rwSets.get(i).getWritesList()) {
+				if (write.getIsDelete())
+					namespace.remove(write.getKey());
+				else
+					namespace.put(write.getKey(),
+							new VersionedValue(write.getValue().toByteArray(), blockNum, txNum));
+			}
+		}
+		return TxValidationCode.VALID;
+	}
+
+	private static boolean sameVersion(VersionedValue current, KVRead read) {
+		if (!read.hasVersion())
+			return current == null;
+		return current != null && current.blockNum == read.getVersion().getBlockNum()
+				&& current.txNum == read.getVersion().getTxNum();
+	}
+
+	private static ByteString hash(ByteString bytes) {
+		try {
+			return ByteString.copyFrom(MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()));
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 基于已提交状态的一次链码模拟，记录读集和写集，对应peer上的交易模拟器
+	 */
+	public Simulator newSimulator(String namespace) {
+		return new Simulator(namespace);
+	}
+
+	public class Simulator {
+		private final String namespace;
+		private final Map<String, KVRead> reads = new LinkedHashMap<>();
+		private final Map<String, KVWrite> writes = new LinkedHashMap<>();
+
+		Simulator(String namespace) {
+			this.namespace = namespace;
+		}
+
+		public byte[] getState(String key) {
+			lock.readLock().lock();
+			try {
+				TreeMap<String, VersionedValue> values = state.get(namespace);
+				VersionedValue value = values == null ? null : values.get(key);
+				KVRead.Builder read = KVRead.newBuilder().setKey(key);
+				if (value != null)
+					read.setVersion(Version.newBuilder().setBlockNum(value.blockNum).setTxNum(value.txNum));
+				reads.putIfAbsent(key, read.build());
+				return value == null ? null : value.value;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		public void putState(String key, byte[] value) {
+			writes.put(key, KVWrite.newBuilder().setKey(key).setValue(ByteString.copyFrom(value)).build());
+		}
+
+		public void delState(String key) {
+			writes.put(key, KVWrite.newBuilder().setKey(key).setIsDelete(true).build());
+		}
+
+		// 对应CouchDB富查询：扫描命名空间内的全部键，富查询结果不参与MVCC校验
+		public Map<String, byte[]> query(BiPredicate<String, byte[]> selector) {
+			lock.readLock().lock();
+			try {
+				Map<String, byte[]> results = new LinkedHashMap<>();
+				TreeMap<String, VersionedValue> values = state.get(namespace);
+				if (values != null) {
+					for (Map.Entry<String, VersionedValue> entry : values.entrySet()) {
+						if (selector.test(entry.getKey(), entry.getValue().value))
+							results.put(entry.getKey(), entry.getValue().value);
+					}
+				}
+				return results;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		public ByteString getResults() {
+			KVRWSet rwSet = KVRWSet.newBuilder().addAllReads(reads.values()).addAllWrites(writes.values()).build();
+			return TxReadWriteSet.newBuilder().setDataModel(TxReadWriteSet.DataModel.KV)
+					.addNsRwset(NsReadWriteSet.newBuilder().setNamespace(namespace).setRwset(rwSet.toByteString()))
+					.build().toByteString();
+		}
+	}
+
+	static class VersionedValue {
+		final byte[] value;
+		final long blockNum;
+		final long txNum;
+
+		VersionedValue(byte[] value, long blockNum, long txNum) {
+			this.value = value;
+			this.blockNum = blockNum;
+			this.txNum = txNum;
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package org.app.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.app.config.Config;
+import org.app.util.Util;
+import org.hyperledger.fabric.protos.common.Common.Block;
+import org.hyperledger.fabric.protos.common.Common.ChannelHeader;
+import org.hyperledger.fabric.protos.common.Common.Envelope;
+import org.hyperledger.fabric.protos.common.Common.Header;
+import org.hyperledger.fabric.protos.common.Common.HeaderType;
+import org.hyperledger.fabric.protos.common.Common.Payload;
+import org.hyperledger.fabric.protos.common.Common.Status;
+import org.hyperledger.fabric.protos.common.Ledger.BlockchainInfo;
+import org.hyperledger.fabric.protos.orderer.Ab.BroadcastResponse;
+import org.hyperledger.fabric.protos.orderer.Ab.DeliverResponse;
+import org.hyperledger.fabric.protos.orderer.Ab.SeekInfo;
+import org.hyperledger.fabric.protos.orderer.Ab.SeekPosition;
+import org.hyperledger.fabric.protos.orderer.AtomicBroadcastGrpc;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeDeploymentSpec;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeID;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeSpec;
+import org.hyperledger.fabric.protos.peer.EndorserGrpc;
+import org.hyperledger.fabric.protos.peer.EventsGrpc;
+import org.hyperledger.fabric.protos.peer.FabricProposal.Proposal;
+import org.hyperledger.fabric.protos.peer.FabricProposal.SignedProposal;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.ProposalResponse;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.Response;
+import org.hyperledger.fabric.protos.peer.PeerEvents.Event;
+import org.hyperledger.fabric.protos.peer.PeerEvents.SignedEvent;
+import org.hyperledger.fabric.protos.peer.Query.ChaincodeInfo;
+import org.hyperledger.fabric.protos.peer.Query.ChaincodeQueryResponse;
+import org.hyperledger.fabric.protos.peer.Query.ChannelInfo;
+import org.hyperledger.fabric.protos.peer.Query.ChannelQueryResponse;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * 单进程的Fabric替身：在Config中的地址上启动orderer、全部peer和EventHub，
+ * 共享一份内存账本，cc_hash和cc_authority由Java实现。
+ * 另外模拟了网络启动（Manager）用到的通道创建、cscc加入通道和lscc安装、实例化，各peer分别记录加入和安装状态。
+ * 启动时把自签名的管理员证书写入users/，客户端因此直接复用该身份，不需要CA。
+ *
+ * 用法：java -cp target/benchmarks.jar org.app.benchmark.FakeNetwork [BatchSize] [BatchTimeout毫秒]
+ * 需与客户端在同一工作目录下运行
+ */
+public class FakeNetwork {
+
+	private final BenchmarkIdentity identity;
+	private final ByteString endorser;
+	private final FakeLedger ledger;
+	private final Map<String, FakeChaincode> chaincodes = new HashMap<>();
+	private final List<Server> servers = new ArrayList<>();
+	// 已实例化的链码，名称到版本
+	private final Map<String, String> instantiated = new ConcurrentHashMap<>();
+	// 实例化各链码的交易号，同一实例化提案发给每个peer背书
+	private final Map<String, String> deployments = new ConcurrentHashMap<>();
+	private volatile boolean channelCreated;
+
+	public FakeNetwork(BenchmarkIdentity identity, int batchSize, long batchTimeout) {
+		this.identity = identity;
+		this.endorser = StubPeer.serializedIdentity(identity);
+		this.ledger = new FakeLedger(identity, Config.CHANNEL_NAME, batchSize, batchTimeout);
+		chaincodes.put(Config.CHAINCODE_1_NAME, new FakeAuthorityChaincode());
+		chaincodes.put(Config.CHAINCODE_2_NAME, new FakeHashChaincode());
+	}
+
+	public FakeLedger getLedger() {
+		return ledger;
+	}
+
+	// 在Config中orderer、peer和EventHub的端口上启动服务
+	public FakeNetwork start() throws IOException {
+		servers.add(NettyServerBuilder.forPort(port(Config.ORDERER_URL)).addService(new Orderer()).build().start());
+		for (String peerUrl : Config.PEER_URLS)
+			servers.add(NettyServerBuilder.forPort(port(peerUrl)).addService(new Endorser()).build().start());
+		servers.add(NettyServerBuilder.forPort(port(Config.EVENTHUB_URL)).addService(new EventHub()).build().start());
+		return this;
+	}
+
+	public void stop() {
+		for (Server server : servers)
+			server.shutdownNow();
+	}
+
+	private static int port(String url) {
+		return URI.create(url).getPort();
+	}
+
+	class Endorser extends EndorserGrpc.EndorserImplBase {
+		private volatile boolean joined;
+		// 已安装的链码，名称到版本
+		private final Map<String, String> installed = new ConcurrentHashMap<>();
+
+		@Override
+		public void processProposal(SignedProposal request, StreamObserver<ProposalResponse> responseObserver) {
+			try {
+				Proposal proposal = Proposal.parseFrom(request.getProposalBytes());
+				ChaincodeSpec spec = StubPeer.chaincodeSpec(proposal);
+				String name = spec.getChaincodeId().getName();
+				List<String> args = StubPeer.arguments(spec);
+				FakeLedger.Simulator simulator = ledger.newSimulator(name);
+				Response response;
+				if (name.equals("qscc"))
+					response = queryLedger(args);
+				else if (name.equals("cscc"))
+					response = configure(this, args);
+				else if (name.equals("lscc"))
+					response = lifecycle(this, proposal, spec, args);
+				else if (chaincodes.containsKey(name) && !args.isEmpty())
+					response = chaincodes.get(name).invoke(simulator, args.get(0), args.subList(1, args.size()));
+				else
+					response = StubPeer.error("chaincode " + name + " not found");
+				responseObserver.onNext(
+						StubPeer.endorsement(identity, endorser, proposal, response, simulator.getResults()));
+				responseObserver.onCompleted();
+			} catch (Exception e) {
+				responseObserver.onError(e);
+			}
+		}
+	}
+
+	// 系统链码qscc中客户端会用到的账本查询
+	private Response queryLedger(List<String> args) {
+		if (args.get(0).equals("GetChainInfo")) {
+			long height = ledger.getHeight();
+			return StubPeer.success(BlockchainInfo.newBuilder().setHeight(height)
+					.setCurrentBlockHash(ledger.getBlock(height - 1).getHeader().getDataHash()).build().toByteArray());
+		}
+		if (args.get(0).equals("GetBlockByNumber") && args.size() == 3) {
+			Block block = ledger.getBlock(Long.parseLong(args.get(2)));
+			return block == null ? StubPeer.error("block " + args.get(2) + " not found")
+					: StubPeer.success(block.toByteArray());
+		}
+		return StubPeer.error("qscc function " + args.get(0) + " not supported");
+	}
+
+	// 系统链码cscc：加入通道、查询已加入的通道
+	private Response configure(Endorser peer, List<String> args) {
+		if (args.get(0).equals("JoinChain")) {
+			if (peer.joined)
+				return StubPeer.error("Cannot create ledger from genesis block, due to LedgerID already exists");
+			peer.joined = true;
+			return StubPeer.success(new byte[0]);
+		}
+		if (args.get(0).equals("GetChannels")) {
+			ChannelQueryResponse.Builder channels = ChannelQueryResponse.newBuilder();
+			if (peer.joined)
+				channels.addChannels(ChannelInfo.newBuilder().setChannelId(Config.CHANNEL_NAME));
+			return StubPeer.success(channels.build().toByteArray());
+		}
+		return StubPeer.error("cscc function " + args.get(0) + " not supported");
+	}
+
+	// 系统链码lscc：安装、实例化以及查询已安装、已实例化的链码
+	private Response lifecycle(Endorser peer, Proposal proposal, ChaincodeSpec spec, List<String> args) throws IOException {
+		switch (args.get(0)) {
+		case "install": {
+			ChaincodeID id = ChaincodeDeploymentSpec.parseFrom(spec.getInput().getArgs(1)).getChaincodeSpec().getChaincodeId();
+			if (id.getVersion().equals(peer.installed.get(id.getName())))
+				return StubPeer.error("chaincode " + id.getName() + ":" + id.getVersion() + " already exists");
+			peer.installed.put(id.getName(), id.getVersion());
+			return StubPeer.success("OK".getBytes(UTF_8));
+		}
+		case "deploy": {
+			ChaincodeID id = ChaincodeDeploymentSpec.parseFrom(spec.getInput().getArgs(2)).getChaincodeSpec().getChaincodeId();
+			if (!id.getVersion().equals(peer.installed.get(id.getName())))
+				return StubPeer.error("cannot get package for chaincode (" + id.getName() + ":" + id.getVersion() + ")");
+			String txId = ChannelHeader.parseFrom(Header.parseFrom(proposal.getHeader()).getChannelHeader()).getTxId();
+			if (!txId.equals(deployments.computeIfAbsent(id.getName(), k -> txId)))
+				return StubPeer.error("chaincode exists " + id.getName());
+			// 真实网络在交易提交后才生效，这里在背书时记录
+			instantiated.put(id.getName(), id.getVersion());
+			return StubPeer.success(new byte[0]);
+		}
+		case "getinstalledchaincodes":
+			return StubPeer.success(chaincodes(peer.installed).toByteArray());
+		case "getchaincodes":
+			return StubPeer.success(chaincodes(instantiated).toByteArray());
+		default:
+			return StubPeer.error("lscc function " + args.get(0) + " not supported");
+		}
+	}
+
+	private static ChaincodeQueryResponse chaincodes(Map<String, String> versions) {
+		ChaincodeQueryResponse.Builder response = ChaincodeQueryResponse.newBuilder();
+		for (Map.Entry<String, String> entry : versions.entrySet())
+			response.addChaincodes(ChaincodeInfo.newBuilder().setName(entry.getKey()).setVersion(entry.getValue()));
+		return response.build();
+	}
+
+	class Orderer extends AtomicBroadcastGrpc.AtomicBroadcastImplBase {
+		@Override
+		public StreamObserver<Envelope> broadcast(StreamObserver<BroadcastResponse> responseObserver) {
+			return new StreamObserver<Envelope>() {
+				public void onNext(Envelope envelope) {
+					Status status = Status.SUCCESS;
+					if (isConfigUpdate(envelope)) {
+						// 账本启动时已有通道的创世区块，第一次创建通道视为成功，之后的创建请求按通道已存在拒绝
+						if (channelCreated)
+							status = Status.BAD_REQUEST;
+						channelCreated = true;
+					} else {
+						ledger.order(envelope);
+					}
+					responseObserver.onNext(BroadcastResponse.newBuilder().setStatus(status).build());
+				}
+
+				public void onError(Throwable t) {
+				}
+
+				public void onCompleted() {
+					responseObserver.onCompleted();
+				}
+			};
+		}
+
+		@Override
+		public StreamObserver<Envelope> deliver(StreamObserver<DeliverResponse> responseObserver) {
+			return new StreamObserver<Envelope>() {
+				public void onNext(Envelope envelope) {
+					try {
+						deliverBlocks(SeekInfo.parseFrom(Payload.parseFrom(envelope.getPayload()).getData()),
+								responseObserver);
+					} catch (Exception e) {
+						responseObserver.onError(e);
+					}
+				}
+
+				public void onError(Throwable t) {
+				}
+
+				public void onCompleted() {
+				}
+			};
+		}
+	}
+
+	private static boolean isConfigUpdate(Envelope envelope) {
+		try {
+			Payload payload = Payload.parseFrom(envelope.getPayload());
+			return ChannelHeader.parseFrom(payload.getHeader().getChannelHeader())
+					.getType() == HeaderType.CONFIG_UPDATE_VALUE;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	// 按SeekInfo分发区块，请求的区块尚未产生时按BLOCK_UNTIL_READY等待或直接返回NOT_FOUND。
+	// 等待时先注册区块监听再补发已有的区块，两者都按区块号从账本顺序读取，不会漏发或重发
+	private void deliverBlocks(SeekInfo seekInfo, StreamObserver<DeliverResponse> responseObserver) {
+		long height = ledger.getHeight();
+		long start = position(seekInfo.getStart(), height);
+		long stop = position(seekInfo.getStop(), height);
+		if (seekInfo.getBehavior() == SeekInfo.SeekBehavior.FAIL_IF_NOT_READY) {
+			long next = start;
+			for (; next <= stop && next < height; next++)
+				responseObserver.onNext(DeliverResponse.newBuilder().setBlock(ledger.getBlock(next)).build());
+			responseObserver.onNext(DeliverResponse.newBuilder()
+					.setStatus(next > stop ? Status.SUCCESS : Status.NOT_FOUND).build());
+			responseObserver.onCompleted();
+			return;
+		}
+		Consumer<Block> listener = new Consumer<Block>() {
+			long next = start;
+			boolean done;
+
+			// 发送账本中从next起已有的区块，参数只用作通知
+			public synchronized void accept(Block ignored) {
+				Block block;
+				for (; !done && next <= stop && (block = ledger.getBlock(next)) != null; next++)
+					responseObserver.onNext(DeliverResponse.newBuilder().setBlock(block).build());
+				if (!done && next > stop) {
+					done = true;
+					ledger.removeListener(this);
+					responseObserver.onNext(DeliverResponse.newBuilder().setStatus(Status.SUCCESS).build());
+					responseObserver.onCompleted();
+				}
+			}
+		};
+		ledger.addListener(listener);
+		listener.accept(null);
+	}
+
+	private static long position(SeekPosition position, long height) {
+		switch (position.getTypeCase()) {
+		case OLDEST:
+			return 0;
+		case SPECIFIED:
+			return position.getSpecified().getNumber();
+		default:
+			return height - 1;
+		}
+	}
+
+	class EventHub extends EventsGrpc.EventsImplBase {
+		@Override
+		public StreamObserver<SignedEvent> chat(StreamObserver<Event> responseObserver) {
+			Consumer<Block> listener = block -> {
+				synchronized (responseObserver) {
+					responseObserver.onNext(Event.newBuilder().setBlock(block).build());
+				}
+			};
+			AtomicBoolean registered = new AtomicBoolean();
+			return new StreamObserver<SignedEvent>() {
+				public void onNext(SignedEvent event) {
+					// 第一次注册即开始推送之后产生的区块，重复注册不再添加监听，否则区块会重复推送
+					if (registered.compareAndSet(false, true))
+						ledger.addListener(listener);
+				}
+
+				public void onError(Throwable t) {
+					ledger.removeListener(listener);
+				}
+
+				public void onCompleted() {
+					ledger.removeListener(listener);
+					responseObserver.onCompleted();
+				}
+			};
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		long batchTimeout = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+
+		BenchmarkIdentity identity = new BenchmarkIdentity("Admin@org1.example.com");
+		Util.writeUserContext(identity.newUserContext(Config.ADMIN, Config.ORG1));
+		FakeNetwork network = new FakeNetwork(identity, batchSize, batchTimeout).start();
+		Logger.getLogger(FakeNetwork.class.getName()).log(Level.INFO, "假网络已启动，BatchSize=" + batchSize
+				+ "，BatchTimeout=" + batchTimeout + "ms，管理员证书已写入 users/" + Config.ORG1);
+		Runtime.getRuntime().addShutdownHook(new Thread(network::stop));
+		Thread.currentThread().join();
+	}
+}
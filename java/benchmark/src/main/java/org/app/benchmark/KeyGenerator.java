@@ -0,0 +1,70 @@
+package org.app.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 负载生成器的标识分布：均匀分布，或Gray等人的Zipfian算法（与YCSB的ZipfianGenerator相同），
+ * 排名越靠前的标识越热。标识按前缀轮流分配，如 bupt/0、bupt.fnl/1、bupt/2 ...
+ */
+public class KeyGenerator {
+
+	private final String[] prefixes;
+	private final long items;
+	private final boolean zipfian;
+
+	// Zipfian的预计算常数
+	private final double theta;
+	private final double zetan;
+	private final double alpha;
+	private final double eta;
+
+	public KeyGenerator(String[] prefixes, long items, boolean zipfian, double theta) {
+		this.prefixes = prefixes;
+		this.items = items;
+		this.zipfian = zipfian;
+		this.theta = theta;
+		if (zipfian) {
+			double zeta2 = zeta(2, theta);
+			this.zetan = zeta(items, theta);
+			this.alpha = 1.0 / (1.0 - theta);
+			this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+		} else {
+			this.zetan = 0;
+			this.alpha = 0;
+			this.eta = 0;
+		}
+	}
+
+	private static double zeta(long n, double theta) {
+		double sum = 0;
+		for (long i = 0; i < n; i++)
+			sum += 1 / Math.pow(i + 1, theta);
+		return sum;
+	}
+
+	// 下一个标识的序号，范围 [0, items)
+	public long nextIndex() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (!zipfian)
+			return random.nextLong(items);
+		double u = random.nextDouble();
+		double uz = u * zetan;
+		if (uz < 1.0)
+			return 0;
+		if (uz < 1.0 + Math.pow(0.5, theta))
+			return 1;
+		return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+	}
+
+	public String identifier(long index) {
+		return prefixes[(int) (index % prefixes.length)] + index;
+	}
+
+	public String nextIdentifier() {
+		return identifier(nextIndex());
+	}
+
+	public long getItems() {
+		return items;
+	}
+}
@@ -0,0 +1,359 @@
+package org.app.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.app.chaincode.authority.QueryAuthority;
+import org.app.chaincode.hash.HashBatcher;
+import org.app.chaincode.hash.InvokeHash;
+import org.app.chaincode.hash.QueryHash;
+import org.app.config.Config;
+
+import net.sf.json.JSONObject;
+
+/**
+ * 负载生成器：以固定的目标速率驱动InvokeHash、QueryHash和QueryAuthority，输出吞吐量和延迟分位数，用于DHT接入的容量规划。
+ *
+ * 延迟一律从操作的计划开始时间算起（而不是实际发出的时间），客户端或网络卡顿期间本应发出的请求
+ * 也会计入排队时间，避免coordinated omission低估尾延迟。
+ * - open：开环，按计划时间表发出操作，不等待上一个操作完成，写入在交易提交后计时
+ * - closed：闭环，threads个线程各自按 threads/rate 的间隔发出操作并等待完成，
+ *   同时输出未校正的服务时间，便于和校正后的结果对比
+ *
+ * 用法：java -cp target/benchmarks.jar org.app.benchmark.LoadGenerator [参数=值 ...]
+ * 参数（括号内为默认值）：
+ *   mode(open)  rate(100) 每秒操作数  duration(60) 秒  warmup(10) 秒  threads(16)
+ *   read(0.7) 读取hash的比例  authority(0.1) 读取权限的比例，其余为写入
+ *   distribution(zipfian|uniform)  theta(0.99)  keys(10000)  prefixes(bupt/,bupt.fnl/)
+ *   orgs(bupt)  preload(true) 开始前写入全部标识  interval(5) 报告间隔秒  quiet(true) 屏蔽客户端的逐条输出
+ */
+public class LoadGenerator {
+
+	// 操作类型
+	enum Op {
+		WRITE("写入hash"), READ("读取hash"), AUTHORITY("读取权限");
+
+		final String label;
+
+		Op(String label) {
+			this.label = label;
+		}
+	}
+
+	// 延迟以微秒记录，最长一小时
+	private static final long HIGHEST_LATENCY = TimeUnit.HOURS.toMicros(1);
+
+	private final Map<String, String> options;
+	private final String mode;
+	private final double rate;
+	private final long duration;
+	private final long warmup;
+	private final int threads;
+	private final double readRatio;
+	private final double authorityRatio;
+	private final KeyGenerator keys;
+	private final String[] orgs;
+	private final long interval;
+	private final PrintStream out;
+
+	private final InvokeHash invokeHash;
+	private final Map<Op, Recorder> corrected = new EnumMap<>(Op.class);
+	private final Map<Op, Recorder> uncorrected = new EnumMap<>(Op.class);
+	private final Map<Op, Histogram> correctedTotal = new EnumMap<>(Op.class);
+	private final Map<Op, Histogram> uncorrectedTotal = new EnumMap<>(Op.class);
+	private final Map<Op, AtomicLong> errors = new EnumMap<>(Op.class);
+	private final AtomicLong outstanding = new AtomicLong();
+
+	// 计划开始时间早于该时刻的操作属于预热，不计入统计
+	private volatile long measureStart;
+	private long runStart;
+
+	public LoadGenerator(Map<String, String> options, PrintStream out) {
+		this.options = options;
+		this.out = out;
+		this.mode = option("mode", "open");
+		this.rate = Double.parseDouble(option("rate", "100"));
+		this.duration = TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration", "60")));
+		this.warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup", "10")));
+		this.threads = Integer.parseInt(option("threads", "16"));
+		this.readRatio = Double.parseDouble(option("read", "0.7"));
+		this.authorityRatio = Double.parseDouble(option("authority", "0.1"));
+		this.keys = new KeyGenerator(option("prefixes", "bupt/,bupt.fnl/").split(","),
+				Long.parseLong(option("keys", "10000")),
+				!"uniform".equals(option("distribution", "zipfian")),
+				Double.parseDouble(option("theta", "0.99")));
+		this.orgs = option("orgs", "bupt").split(",");
+		this.interval = TimeUnit.SECONDS.toNanos(Long.parseLong(option("interval", "5")));
+		if (!"open".equals(mode) && !"closed".equals(mode))
+			throw new IllegalArgumentException("mode只能是open或closed：" + mode);
+		if (rate <= 0 || readRatio < 0 || authorityRatio < 0 || readRatio + authorityRatio > 1)
+			throw new IllegalArgumentException("rate必须大于0，read与authority之和不能超过1");
+
+		this.invokeHash = new InvokeHash("写入");
+		for (Op op : Op.values()) {
+			corrected.put(op, new Recorder(HIGHEST_LATENCY, 3));
+			uncorrected.put(op, new Recorder(HIGHEST_LATENCY, 3));
+			correctedTotal.put(op, new Histogram(HIGHEST_LATENCY, 3));
+			uncorrectedTotal.put(op, new Histogram(HIGHEST_LATENCY, 3));
+			errors.put(op, new AtomicLong());
+		}
+	}
+
+	private String option(String name, String defaultValue) {
+		return options.getOrDefault(name, defaultValue);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (eq < 0)
+				throw new IllegalArgumentException("参数格式应为 名称=值：" + arg);
+			options.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+		PrintStream out = System.out;
+		if (Boolean.parseBoolean(options.getOrDefault("quiet", "true"))) {
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+				}
+			}));
+		}
+		new LoadGenerator(options, out).run();
+		System.exit(0);
+	}
+
+	public void run() throws InterruptedException {
+		if (Boolean.parseBoolean(option("preload", "true")))
+			preload();
+
+		out.println(String.format("【负载生成】%s模式，目标 %.1f 次/秒，读取hash %.0f%%，读取权限 %.0f%%，写入 %.0f%%，%d 个标识（%s）",
+				"open".equals(mode) ? "开环" : "闭环", rate, readRatio * 100, authorityRatio * 100,
+				(1 - readRatio - authorityRatio) * 100, keys.getItems(), option("distribution", "zipfian")));
+
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "load-generator-report");
+			thread.setDaemon(true);
+			return thread;
+		});
+		runStart = System.nanoTime();
+		measureStart = runStart + warmup;
+		reporter.scheduleAtFixedRate(this::reportInterval, interval, interval, TimeUnit.NANOSECONDS);
+
+		if ("open".equals(mode))
+			runOpen();
+		else
+			runClosed();
+
+		// 等待在途操作完成，最多等待一个提交超时
+		long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Config.COMMIT_TIMEOUT);
+		while (outstanding.get() > 0 && System.nanoTime() < drainDeadline)
+			Thread.sleep(10);
+		reporter.shutdownNow();
+		reportInterval();
+		reportTotal();
+	}
+
+	// 开始前按HashBatcher批量写入全部标识，使读取命中已注册的标识
+	private void preload() throws InterruptedException {
+		out.println("【负载生成】预先写入 " + keys.getItems() + " 个标识...");
+		HashBatcher batcher = new HashBatcher(invokeHash);
+		List<CompletableFuture<?>> futures = new ArrayList<>();
+		for (long i = 0; i < keys.getItems(); i++)
+			futures.add(batcher.add(keys.identifier(i), newHash()));
+		batcher.flush();
+		long failed = 0;
+		for (CompletableFuture<?> future : futures) {
+			try {
+				future.join();
+			} catch (Exception e) {
+				failed++;
+			}
+		}
+		out.println("【负载生成】预先写入完成，失败 " + failed + " 个");
+	}
+
+	// 开环：按计划时间表发出操作，操作在线程池中执行，线程池跟不上时排队时间计入延迟
+	private void runOpen() throws InterruptedException {
+		ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "load-generator-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		double period = TimeUnit.SECONDS.toNanos(1) / rate;
+		long end = runStart + warmup + duration;
+		for (long i = 0; ; i++) {
+			long intended = runStart + (long) (i * period);
+			if (intended >= end)
+				break;
+			waitUntil(intended);
+			Op op = nextOp();
+			outstanding.incrementAndGet();
+			workers.execute(() -> execute(op, intended, false));
+		}
+		workers.shutdown();
+	}
+
+	// 闭环：每个线程等待上一个操作完成后再按自己的时间表发出下一个
+	private void runClosed() throws InterruptedException {
+		double period = TimeUnit.SECONDS.toNanos(1) * threads / rate;
+		long end = runStart + warmup + duration;
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			long offset = (long) (period * t / threads);
+			Thread thread = new Thread(() -> {
+				for (long i = 0; ; i++) {
+					long intended = runStart + offset + (long) (i * period);
+					if (intended >= end)
+						break;
+					waitUntil(intended);
+					outstanding.incrementAndGet();
+					execute(nextOp(), intended, true);
+				}
+			}, "load-generator-worker-" + t);
+			thread.setDaemon(true);
+			workers.add(thread);
+			thread.start();
+		}
+		for (Thread thread : workers)
+			thread.join();
+	}
+
+	private static void waitUntil(long deadline) {
+		long now;
+		while ((now = System.nanoTime()) < deadline)
+			LockSupport.parkNanos(deadline - now);
+	}
+
+	private Op nextOp() {
+		double p = ThreadLocalRandom.current().nextDouble();
+		if (p < readRatio)
+			return Op.READ;
+		if (p < readRatio + authorityRatio)
+			return Op.AUTHORITY;
+		return Op.WRITE;
+	}
+
+	// 执行一个操作，wait为true时等待写入的交易提交
+	private void execute(Op op, long intended, boolean wait) {
+		long start = System.nanoTime();
+		switch (op) {
+			case READ:
+				String mappingDataHash = QueryHash.query(keys.nextIdentifier());
+				complete(op, intended, start, mappingDataHash != null);
+				break;
+			case AUTHORITY:
+				Object records = QueryAuthority.query(orgs[ThreadLocalRandom.current().nextInt(orgs.length)]);
+				complete(op, intended, start, records != null);
+				break;
+			case WRITE:
+				JSONObject dataJson = new JSONObject();
+				dataJson.put("identifier", keys.nextIdentifier());
+				dataJson.put("mappingData_hash", newHash());
+				CompletableFuture<?> future;
+				try {
+					future = invokeHash.invokeAsync(dataJson);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					complete(op, intended, start, false);
+					break;
+				}
+				if (wait) {
+					boolean ok = true;
+					try {
+						future.join();
+					} catch (Exception e) {
+						ok = false;
+					}
+					complete(op, intended, start, ok);
+				} else {
+					future.whenComplete((event, e) -> complete(op, intended, start, e == null));
+				}
+				break;
+		}
+	}
+
+	private void complete(Op op, long intended, long start, boolean ok) {
+		long now = System.nanoTime();
+		outstanding.decrementAndGet();
+		if (intended < measureStart)
+			return;
+		if (!ok) {
+			errors.get(op).incrementAndGet();
+			return;
+		}
+		corrected.get(op).recordValue(Math.min(HIGHEST_LATENCY, TimeUnit.NANOSECONDS.toMicros(now - intended)));
+		uncorrected.get(op).recordValue(Math.min(HIGHEST_LATENCY, TimeUnit.NANOSECONDS.toMicros(now - start)));
+	}
+
+	private static String newHash() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+	}
+
+	private synchronized void reportInterval() {
+		double elapsed = (System.nanoTime() - runStart) / 1e9;
+		if (System.nanoTime() < measureStart) {
+			out.println(String.format("[%6.1fs] 预热中", elapsed));
+			return;
+		}
+		double seconds = interval / 1e9;
+		for (Op op : Op.values()) {
+			Histogram histogram = corrected.get(op).getIntervalHistogram();
+			uncorrectedTotal.get(op).add(uncorrected.get(op).getIntervalHistogram());
+			correctedTotal.get(op).add(histogram);
+			if (histogram.getTotalCount() == 0)
+				continue;
+			out.println(String.format("[%6.1fs] %s %8.1f 次/秒  p50 %8.2f  p99 %8.2f  max %8.2f 毫秒",
+					elapsed, op.label, histogram.getTotalCount() / seconds,
+					histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+					histogram.getMaxValue() / 1000.0));
+		}
+	}
+
+	private void reportTotal() {
+		double seconds = duration / 1e9;
+		long total = 0;
+		out.println("【负载生成】统计结果（延迟单位：毫秒，从计划开始时间算起）");
+		out.println(String.format("%-8s %10s %10s %10s %10s %10s %10s %10s %8s",
+				"操作", "次数", "次/秒", "p50", "p90", "p99", "p99.9", "max", "失败"));
+		for (Op op : Op.values()) {
+			Histogram histogram = correctedTotal.get(op);
+			total += histogram.getTotalCount();
+			printRow(op.label, histogram, seconds, errors.get(op).get());
+		}
+		if ("closed".equals(mode)) {
+			out.println("未校正的服务时间（从实际发出时间算起，闭环下会低估尾延迟）：");
+			for (Op op : Op.values())
+				printRow(op.label, uncorrectedTotal.get(op), seconds, errors.get(op).get());
+		}
+		out.println(String.format("【负载生成】总吞吐量 %.1f 次/秒（目标 %.1f 次/秒）", total / seconds, rate));
+	}
+
+	private void printRow(String label, Histogram histogram, double seconds, long failed) {
+		out.println(String.format("%-8s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %10.2f %8d",
+				label, histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+				histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+				histogram.getMaxValue() / 1000.0, failed));
+	}
+}
@@ -0,0 +1,135 @@
+package org.app.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.app.chaincode.QueryResultReader;
+import org.app.chaincode.authority.OrgRecord;
+import org.app.config.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * queryInfoByOrg返回负载的解析：json-lib（QueryAuthority.query的做法）、org.json、gson的流式解析，
+ * 以及直接在字节上解析的QueryResultReader（QueryAuthority.queryRecords的做法）。
+ * 每种方式都取出全部记录的public_key，以保证工作量相同
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadParseBenchmark {
+
+	// 负载中的记录数
+	@Param({ "1", "100" })
+	public int records;
+
+	private String payload;
+	private byte[] payloadBytes;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		payload = orgRecords(records);
+		payloadBytes = payload.getBytes(UTF_8);
+	}
+
+	// 与cc_authority的constructQueryResponseFromIterator输出格式一致
+	static String orgRecords(int records) {
+		StringBuilder buffer = new StringBuilder("[");
+		for (int i = 0; i < records; i++) {
+			if (i > 0)
+				buffer.append(",");
+			buffer.append("{\"Key\":\"").append(i).append("\", \"Record\":{\"docType\":\"org\",\"item_num\":\"")
+					.append(i).append("\",\"org_name\":\"bupt\",\"identity_prefix\":\"bupt.fnl").append(i)
+					.append("\",\"public_key\":\"").append(Config.BUPT_PUB_KRY).append("\",\"authority\":\"15\"}}");
+		}
+		return buffer.append("]").toString();
+	}
+
+	@Benchmark
+	public List<String> jsonLib() {
+		net.sf.json.JSONArray array = net.sf.json.JSONArray.fromObject(payload);
+		List<String> keys = new ArrayList<>(array.size());
+		for (int i = 0; i < array.size(); i++)
+			keys.add(array.getJSONObject(i).getJSONObject("Record").getString("public_key"));
+		return keys;
+	}
+
+	@Benchmark
+	public List<String> orgJson() {
+		org.json.JSONArray array = new org.json.JSONArray(payload);
+		List<String> keys = new ArrayList<>(array.length());
+		for (int i = 0; i < array.length(); i++)
+			keys.add(array.getJSONObject(i).getJSONObject("Record").getString("public_key"));
+		return keys;
+	}
+
+	@Benchmark
+	public List<String> streaming() throws IOException {
+		List<String> keys = new ArrayList<>();
+		try (JsonReader reader = new JsonReader(new StringReader(payload))) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if (!reader.nextName().equals("Record")) {
+						reader.skipValue();
+						continue;
+					}
+					reader.beginObject();
+					while (reader.hasNext()) {
+						if (reader.nextName().equals("public_key"))
+							keys.add(reader.nextString());
+						else
+							reader.skipValue();
+					}
+					reader.endObject();
+				}
+				reader.endObject();
+			}
+			reader.endArray();
+		}
+		return keys;
+	}
+
+	@Benchmark
+	public List<String> queryResultReader() {
+		byte[] publicKey = "public_key".getBytes(UTF_8);
+		List<String> keys = new ArrayList<>();
+		QueryResultReader reader = new QueryResultReader(payloadBytes);
+		while (reader.next()) {
+			while (reader.nextField()) {
+				if (reader.fieldIs(publicKey))
+					keys.add(reader.stringValue());
+				else
+					reader.skipValue();
+			}
+		}
+		return keys;
+	}
+
+	// 解析出完整的OrgRecord，比只取public_key多创建四个字符串
+	@Benchmark
+	public List<OrgRecord> orgRecordParse() {
+		return OrgRecord.parse(payloadBytes);
+	}
+}
@@ -0,0 +1,88 @@
+package org.app.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.app.client.FabricClient;
+import org.app.config.Config;
+import org.hyperledger.fabric.protos.peer.FabricProposal.Proposal;
+import org.hyperledger.fabric.sdk.ChaincodeID;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.TransactionProposalRequest;
+import org.hyperledger.fabric.sdk.transaction.ProposalBuilder;
+import org.hyperledger.fabric.sdk.transaction.TransactionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 交易提案的构造开销：与InvokeHash相同的TransactionProposalRequest，SDK据此生成的Proposal，以及签名后的提案
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProposalBenchmark {
+
+	private static final String[] ARGUMENTS = { "bupt.fnl/987", "d92jh4nd" };
+
+	private HFClient client;
+	private Channel channel;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		BenchmarkIdentity identity = new BenchmarkIdentity("Admin@org1.example.com");
+		client = new FabricClient(identity.newUserContext(Config.ADMIN, "org1")).getInstance();
+		channel = client.newChannel(Config.CHANNEL_NAME);
+	}
+
+	@Benchmark
+	public TransactionProposalRequest newRequest() throws Exception {
+		TransactionProposalRequest request = client.newTransactionProposalRequest();
+		ChaincodeID ccid = ChaincodeID.newBuilder().setName(Config.CHAINCODE_2_NAME).build();
+		request.setChaincodeID(ccid);
+		request.setFcn("invokeMappingDataHash");
+		request.setArgs(ARGUMENTS);
+		request.setProposalWaitTime(1000);
+
+		Map<String, byte[]> tm2 = new HashMap<>();
+		tm2.put("HyperLedgerFabric", "TransactionProposalRequest:JavaSDK".getBytes(UTF_8));
+		tm2.put("method", "TransactionProposalRequest".getBytes(UTF_8));
+		tm2.put("result", ":)".getBytes(UTF_8));
+		tm2.put("event", "!".getBytes(UTF_8));
+		request.setTransientMap(tm2);
+		return request;
+	}
+
+	// 生成交易ID、nonce和提案头
+	@Benchmark
+	public Proposal buildProposal() throws Exception {
+		TransactionProposalRequest request = newRequest();
+		TransactionContext context = new TransactionContext(channel, client.getUserContext(),
+				client.getCryptoSuite());
+		return ProposalBuilder.newBuilder().context(context).request(request).build();
+	}
+
+	@Benchmark
+	public byte[] buildAndSignProposal() throws Exception {
+		TransactionProposalRequest request = newRequest();
+		TransactionContext context = new TransactionContext(channel, client.getUserContext(),
+				client.getCryptoSuite());
+		Proposal proposal = ProposalBuilder.newBuilder().context(context).request(request).build();
+		return context.signByteString(proposal.toByteArray()).toByteArray();
+	}
+}
@@ -0,0 +1,70 @@
+package org.app.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.app.client.ChannelClient;
+import org.app.client.FabricClient;
+import org.app.config.Config;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 经ChannelClient（含QueryRouter）向桩节点发送链码查询的端到端开销：提案构造、签名、gRPC往返和响应解析，
+ * 不包含真实peer的链码执行时间
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+	private static final int STUB_PEERS = 3;
+
+	private StubPeer[] stubPeers;
+	private ChannelClient channelClient;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		BenchmarkIdentity identity = new BenchmarkIdentity("Admin@org1.example.com");
+		byte[] hash = "s7ehdnj3".getBytes("UTF-8");
+		stubPeers = new StubPeer[STUB_PEERS];
+		for (int i = 0; i < STUB_PEERS; i++)
+			stubPeers[i] = new StubPeer(identity, Config.CHANNEL_NAME, (chaincode, args) -> hash).start(0);
+
+		FabricClient fabClient = new FabricClient(identity.newUserContext(Config.ADMIN, "org1"));
+		channelClient = fabClient.createChannelClient(Config.CHANNEL_NAME);
+		Channel channel = channelClient.getChannel();
+		channel.addOrderer(fabClient.getInstance().newOrderer("stub-orderer", stubPeers[0].getUrl()));
+		for (int i = 0; i < STUB_PEERS; i++)
+			channel.addPeer(fabClient.getInstance().newPeer("stub-peer" + i, stubPeers[i].getUrl()));
+		channel.initialize();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		channelClient.getChannel().shutdown(true);
+		for (StubPeer stubPeer : stubPeers)
+			stubPeer.stop();
+	}
+
+	@Benchmark
+	public Collection<ProposalResponse> getHashByIdentifier() throws Exception {
+		return channelClient.queryByChainCode(Config.CHAINCODE_2_NAME, "getHashByIdentifier",
+				new String[] { "bupt/123" });
+	}
+}
@@ -0,0 +1,53 @@
+package org.app.benchmark;
+
+import java.security.PrivateKey;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.sdk.security.CryptoSuite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CryptoSuite对提案字节的ECDSA签名，每个背书请求和每笔交易信封都要签名一次
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SigningBenchmark {
+
+	// 提案大小（字节）
+	@Param({ "512", "4096" })
+	public int size;
+
+	private CryptoSuite cryptoSuite;
+	private PrivateKey key;
+	private byte[] proposal;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		cryptoSuite = CryptoSuite.Factory.getCryptoSuite();
+		cryptoSuite.init();
+		key = new BenchmarkIdentity("Admin@org1.example.com").getKeyPair().getPrivate();
+		proposal = new byte[size];
+		new Random(42).nextBytes(proposal);
+	}
+
+	@Benchmark
+	public byte[] sign() throws Exception {
+		return cryptoSuite.sign(key, proposal);
+	}
+}
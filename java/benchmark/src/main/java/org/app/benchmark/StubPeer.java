@@ -0,0 +1,230 @@
+package org.app.benchmark;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.app.config.Config;
+import org.hyperledger.fabric.protos.common.Common.Block;
+import org.hyperledger.fabric.protos.common.Common.BlockData;
+import org.hyperledger.fabric.protos.common.Common.BlockHeader;
+import org.hyperledger.fabric.protos.common.Common.BlockMetadata;
+import org.hyperledger.fabric.protos.common.Common.BlockMetadataIndex;
+import org.hyperledger.fabric.protos.common.Common.ChannelHeader;
+import org.hyperledger.fabric.protos.common.Common.Envelope;
+import org.hyperledger.fabric.protos.common.Common.Header;
+import org.hyperledger.fabric.protos.common.Common.HeaderType;
+import org.hyperledger.fabric.protos.common.Common.LastConfig;
+import org.hyperledger.fabric.protos.common.Common.Metadata;
+import org.hyperledger.fabric.protos.common.Common.Payload;
+import org.hyperledger.fabric.protos.common.Common.Status;
+import org.hyperledger.fabric.protos.common.Configtx;
+import org.hyperledger.fabric.protos.common.Configtx.ConfigEnvelope;
+import org.hyperledger.fabric.protos.common.Configtx.ConfigGroup;
+import org.hyperledger.fabric.protos.common.Configtx.ConfigValue;
+import org.hyperledger.fabric.protos.ledger.rwset.Rwset.TxReadWriteSet;
+import org.hyperledger.fabric.protos.msp.Identities.SerializedIdentity;
+import org.hyperledger.fabric.protos.msp.MspConfig.FabricMSPConfig;
+import org.hyperledger.fabric.protos.msp.MspConfig.MSPConfig;
+import org.hyperledger.fabric.protos.orderer.Ab.BroadcastResponse;
+import org.hyperledger.fabric.protos.orderer.Ab.DeliverResponse;
+import org.hyperledger.fabric.protos.orderer.AtomicBroadcastGrpc;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeInvocationSpec;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeSpec;
+import org.hyperledger.fabric.protos.peer.EndorserGrpc;
+import org.hyperledger.fabric.protos.peer.FabricProposal.ChaincodeAction;
+import org.hyperledger.fabric.protos.peer.FabricProposal.ChaincodeProposalPayload;
+import org.hyperledger.fabric.protos.peer.FabricProposal.Proposal;
+import org.hyperledger.fabric.protos.peer.FabricProposal.SignedProposal;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.Endorsement;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.ProposalResponse;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.ProposalResponsePayload;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse.Response;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * 进程内的桩节点：在一个gRPC端口上同时提供peer背书服务和orderer广播/分发服务。
+ * 背书直接返回handler给出的负载并用桩身份签名；分发只提供通道的配置区块，足以让SDK完成通道初始化。
+ * 用于在没有Fabric网络的情况下测量客户端自身的开销。
+ */
+public class StubPeer {
+
+	private final BenchmarkIdentity identity;
+	private final String channelName;
+	// (链码名, 参数列表) -> 返回负载，参数列表第一项为函数名
+	private final BiFunction<String, List<String>, byte[]> handler;
+	private final Block configBlock;
+	private final ByteString endorser;
+	private Server server;
+
+	public StubPeer(BenchmarkIdentity identity, String channelName,
+			BiFunction<String, List<String>, byte[]> handler) {
+		this.identity = identity;
+		this.channelName = channelName;
+		this.handler = handler;
+		this.configBlock = newConfigBlock(identity, channelName);
+		this.endorser = serializedIdentity(identity);
+	}
+
+	public StubPeer start(int port) throws IOException {
+		server = NettyServerBuilder.forPort(port).addService(new Endorser()).addService(new Orderer()).build()
+				.start();
+		return this;
+	}
+
+	public void stop() {
+		if (server != null)
+			server.shutdownNow();
+	}
+
+	public String getUrl() {
+		return "grpc://localhost:" + server.getPort();
+	}
+
+	class Endorser extends EndorserGrpc.EndorserImplBase {
+		@Override
+		public void processProposal(SignedProposal request, StreamObserver<ProposalResponse> responseObserver) {
+			try {
+				responseObserver.onNext(endorse(request));
+				responseObserver.onCompleted();
+			} catch (Exception e) {
+				responseObserver.onError(e);
+			}
+		}
+	}
+
+	class Orderer extends AtomicBroadcastGrpc.AtomicBroadcastImplBase {
+		@Override
+		public StreamObserver<Envelope> broadcast(StreamObserver<BroadcastResponse> responseObserver) {
+			return new StreamObserver<Envelope>() {
+				public void onNext(Envelope envelope) {
+					responseObserver.onNext(BroadcastResponse.newBuilder().setStatus(Status.SUCCESS).build());
+				}
+
+				public void onError(Throwable t) {
+				}
+
+				public void onCompleted() {
+					responseObserver.onCompleted();
+				}
+			};
+		}
+
+		@Override
+		public StreamObserver<Envelope> deliver(StreamObserver<DeliverResponse> responseObserver) {
+			return new StreamObserver<Envelope>() {
+				public void onNext(Envelope envelope) {
+					// 桩节点的账本只有配置区块，任何查询都返回它
+					responseObserver.onNext(DeliverResponse.newBuilder().setBlock(configBlock).build());
+					responseObserver.onNext(DeliverResponse.newBuilder().setStatus(Status.SUCCESS).build());
+					responseObserver.onCompleted();
+				}
+
+				public void onError(Throwable t) {
+				}
+
+				public void onCompleted() {
+				}
+			};
+		}
+	}
+
+	ProposalResponse endorse(SignedProposal signedProposal) throws Exception {
+		Proposal proposal = Proposal.parseFrom(signedProposal.getProposalBytes());
+		ChaincodeSpec spec = chaincodeSpec(proposal);
+		byte[] result = handler.apply(spec.getChaincodeId().getName(), arguments(spec));
+		Response response = result == null ? error("unknown function " + arguments(spec).get(0)) : success(result);
+		return endorsement(identity, endorser, proposal, response,
+				TxReadWriteSet.newBuilder().setDataModel(TxReadWriteSet.DataModel.KV).build().toByteString());
+	}
+
+	static ChaincodeSpec chaincodeSpec(Proposal proposal) throws InvalidProtocolBufferException {
+		ChaincodeProposalPayload proposalPayload = ChaincodeProposalPayload.parseFrom(proposal.getPayload());
+		return ChaincodeInvocationSpec.parseFrom(proposalPayload.getInput()).getChaincodeSpec();
+	}
+
+	// 链码参数，第一项为函数名
+	static List<String> arguments(ChaincodeSpec spec) {
+		List<String> args = new ArrayList<>();
+		for (ByteString arg : spec.getInput().getArgsList())
+			args.add(arg.toStringUtf8());
+		return args;
+	}
+
+	static Response success(byte[] payload) {
+		return Response.newBuilder().setStatus(200).setPayload(ByteString.copyFrom(payload)).build();
+	}
+
+	static Response error(String message) {
+		return Response.newBuilder().setStatus(500).setMessage(message).build();
+	}
+
+	static ByteString serializedIdentity(BenchmarkIdentity identity) {
+		return SerializedIdentity.newBuilder().setMspid(Config.ORG1_MSP)
+				.setIdBytes(ByteString.copyFromUtf8(identity.getCertPem())).build().toByteString();
+	}
+
+	// 按Fabric的格式构造背书响应：响应负载包含链码动作，背书签名覆盖 负载+背书者身份
+	static ProposalResponse endorsement(BenchmarkIdentity identity, ByteString endorser, Proposal proposal,
+			Response response, ByteString results) throws Exception {
+		ChaincodeAction action = ChaincodeAction.newBuilder().setResults(results).setResponse(response).build();
+		ByteString payload = ProposalResponsePayload.newBuilder()
+				.setProposalHash(ByteString.copyFrom(MessageDigest.getInstance("SHA-256").digest(proposal.toByteArray())))
+				.setExtension(action.toByteString()).build().toByteString();
+		return ProposalResponse.newBuilder().setVersion(1).setResponse(response).setPayload(payload)
+				.setEndorsement(Endorsement.newBuilder().setEndorser(endorser)
+						.setSignature(sign(identity, payload.concat(endorser))))
+				.build();
+	}
+
+	static ByteString sign(BenchmarkIdentity identity, ByteString data) throws Exception {
+		Signature signature = Signature.getInstance("SHA256withECDSA");
+		signature.initSign(identity.getKeyPair().getPrivate());
+		signature.update(data.toByteArray());
+		return ByteString.copyFrom(signature.sign());
+	}
+
+	// 通道配置区块：Application组下只有Org1MSP，根证书为桩身份的自签名证书
+	static Block newConfigBlock(BenchmarkIdentity identity, String channelName) {
+		FabricMSPConfig mspConfig = FabricMSPConfig.newBuilder().setName(Config.ORG1_MSP)
+				.addRootCerts(ByteString.copyFromUtf8(identity.getCertPem())).build();
+		ConfigGroup orgGroup = ConfigGroup.newBuilder().putValues("MSP",
+				ConfigValue.newBuilder().setValue(MSPConfig.newBuilder().setConfig(mspConfig.toByteString()).build()
+						.toByteString()).build())
+				.build();
+		ConfigGroup channelGroup = ConfigGroup.newBuilder().putGroups("Application",
+				ConfigGroup.newBuilder().putGroups(Config.ORG1_MSP, orgGroup).build()).build();
+		ChannelHeader channelHeader = ChannelHeader.newBuilder().setType(HeaderType.CONFIG_VALUE)
+				.setChannelId(channelName).build();
+		Payload payload = Payload.newBuilder()
+				.setHeader(Header.newBuilder().setChannelHeader(channelHeader.toByteString()))
+				.setData(ConfigEnvelope.newBuilder().setConfig(Configtx.Config.newBuilder().setChannelGroup(channelGroup))
+						.build().toByteString())
+				.build();
+		Envelope envelope = Envelope.newBuilder().setPayload(payload.toByteString()).build();
+
+		return Block.newBuilder().setHeader(BlockHeader.newBuilder().setNumber(0))
+				.setData(BlockData.newBuilder().addData(envelope.toByteString())).setMetadata(blockMetadata(new byte[1]))
+				.build();
+	}
+
+	// 区块元数据：最新配置区块始终为0号，交易过滤器为每笔交易的验证码
+	static BlockMetadata blockMetadata(byte[] transactionsFilter) {
+		BlockMetadata.Builder metadata = BlockMetadata.newBuilder();
+		for (int i = 0; i < BlockMetadataIndex.values().length - 1; i++)
+			metadata.addMetadata(ByteString.EMPTY);
+		metadata.setMetadata(BlockMetadataIndex.LAST_CONFIG_VALUE, Metadata.newBuilder()
+				.setValue(LastConfig.newBuilder().setIndex(0).build().toByteString()).build().toByteString());
+		metadata.setMetadata(BlockMetadataIndex.TRANSACTIONS_FILTER_VALUE, ByteString.copyFrom(transactionsFilter));
+		return metadata.build();
+	}
+}
@@ -0,0 +1,83 @@
+package org.app.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.app.config.Config;
+import org.app.user.UserContext;
+import org.app.util.Util;
+import org.hyperledger.fabric.sdk.security.CryptoSuite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * UserContext的持久化：Util中的PEM文件读写，以及作为对照的Java序列化
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserContextBenchmark {
+
+	// 写在当前目录的users/benchmark下，不影响客户端使用的users/org1
+	private static final String AFFILIATION = "benchmark";
+
+	private UserContext userContext;
+	private byte[] serialized;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		// 与CAClient相同，初始化CryptoSuite以注册Util读取私钥所需的BouncyCastle
+		CryptoSuite.Factory.getCryptoSuite().init();
+		userContext = new BenchmarkIdentity("Admin@org1.example.com").newUserContext(Config.ADMIN, AFFILIATION);
+		Util.writeUserContext(userContext);
+		serialized = serialize();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Util.deleteDirectory(new File("users/" + AFFILIATION));
+	}
+
+	@Benchmark
+	public void writePem() throws Exception {
+		Util.writeUserContext(userContext);
+	}
+
+	@Benchmark
+	public UserContext readPem() throws Exception {
+		return Util.readUserContext(AFFILIATION, Config.ADMIN);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(userContext);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public Object deserialize() throws Exception {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+			return in.readObject();
+		}
+	}
+}
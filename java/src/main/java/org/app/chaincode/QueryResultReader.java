@@ -0,0 +1,418 @@
+package org.app.chaincode;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 该类负责直接在链码返回的负载字节上流式解析查询结果，不构造JSON树，只为实际取用的字段创建字符串。
+ * 链码的富查询结果格式为 [{"Key":"...", "Record":{...}}, ...]，用法：
+ * <pre>
+ * QueryResultReader reader = new QueryResultReader(payload);
+ * while (reader.next()) {
+ *     while (reader.nextField()) {
+ *         if (reader.fieldIs(PUBLIC_KEY))
+ *             publicKey = reader.stringValue();
+ *         else
+ *             reader.skipValue();
+ *     }
+ *     key = reader.key();
+ * }
+ * </pre>
+ * 字段名以UTF-8字节数组传入，与负载逐字节比较；负载格式错误时抛出IllegalArgumentException
+ */
+public class QueryResultReader {
+
+    private static final byte[] KEY = "Key".getBytes(UTF_8);
+    private static final byte[] RECORD = "Record".getBytes(UTF_8);
+
+    private final byte[] payload;
+    private int pos;
+    private final int end;
+
+    // 当前元素的Key，Record之后出现的Key在Record的字段读完后才可用
+    private String key;
+    // 当前字段名在负载中的位置，名称含转义字符时为解码后的字节
+    private byte[] fieldBuffer;
+    private int fieldStart;
+    private int fieldLength;
+    // 当前是否位于Record对象内部
+    private boolean inRecord;
+    // 当前字段的值是否已读取或跳过
+    private boolean valueConsumed = true;
+    private boolean firstField;
+    private boolean first = true;
+
+    public QueryResultReader(byte[] payload){
+        this(payload, true);
+    }
+
+    private QueryResultReader(byte[] payload, boolean array){
+        this.payload = payload == null ? new byte[0] : payload;
+        this.end = this.payload.length;
+        skipWhitespace();
+        // 链码在没有结果时可能返回空负载
+        if (array && pos < end)
+            expect('[');
+    }
+
+    // 前进到下一条记录并进入其Record对象，没有更多记录时返回false
+    public boolean next(){
+        // 跳过上一条记录未读的字段
+        while (inRecord)
+            nextField();
+        skipWhitespace();
+        if (pos >= end)
+            return false;
+        if (payload[pos] == ']') {
+            pos = end;
+            return false;
+        }
+        if (!first) {
+            expect(',');
+            skipWhitespace();
+        }
+        first = false;
+        key = null;
+        expect('{');
+        while (true) {
+            skipWhitespace();
+            if (peek() == '}') {
+                // 没有Record的元素
+                pos++;
+                inRecord = false;
+                return true;
+            }
+            readFieldName();
+            if (fieldIs(KEY)) {
+                key = readValueAsString();
+            } else if (fieldIs(RECORD)) {
+                skipWhitespace();
+                if (peek() == '{') {
+                    pos++;
+                    inRecord = true;
+                    firstField = true;
+                } else {
+                    skipValue(); // 非对象的Record按无字段处理
+                    inRecord = false;
+                    finishElementFields();
+                }
+                return true;
+            } else {
+                skipValue();
+            }
+            skipWhitespace();
+            if (peek() == ',')
+                pos++;
+        }
+    }
+
+    // 前进到Record中的下一个字段，字段读完时返回false
+    public boolean nextField(){
+        if (!inRecord)
+            return false;
+        if (!valueConsumed)
+            skipValue();
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            inRecord = false;
+            finishElementFields();
+            return false;
+        }
+        if (!firstField)
+            expect(',');
+        firstField = false;
+        readFieldName();
+        valueConsumed = false;
+        return true;
+    }
+
+    // 当前字段名是否等于name（UTF-8字节）
+    public boolean fieldIs(byte[] name){
+        if (name.length != fieldLength)
+            return false;
+        for (int i = 0; i < fieldLength; i++) {
+            if (fieldBuffer[fieldStart + i] != name[i])
+                return false;
+        }
+        return true;
+    }
+
+    // 当前字段名
+    public String fieldName(){
+        return new String(fieldBuffer, fieldStart, fieldLength, UTF_8);
+    }
+
+    // 读取当前字段的值：字符串返回其内容，null返回null，数字/布尔/对象/数组返回原始JSON文本
+    public String stringValue(){
+        valueConsumed = true;
+        return readValueAsString();
+    }
+
+    // 跳过当前字段的值
+    public void skipValue(){
+        valueConsumed = true;
+        skipWhitespace();
+        int depth = 0;
+        do {
+            byte b = peek();
+            if (b == '"') {
+                scanString();
+            } else if (b == '{' || b == '[') {
+                depth++;
+                pos++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                pos++;
+            } else if (depth == 0) {
+                skipLiteral();
+            } else {
+                pos++;
+            }
+            if (depth > 0)
+                skipWhitespace();
+        } while (depth > 0);
+    }
+
+    // 当前记录的Key
+    public String key(){
+        return key;
+    }
+
+    // 从负载中取出第index条记录的Record里名为field的字段，不存在时返回null
+    public static String field(byte[] payload, int index, String field){
+        byte[] name = field.getBytes(UTF_8);
+        QueryResultReader reader = new QueryResultReader(payload);
+        for (int i = 0; reader.next(); i++) {
+            if (i < index)
+                continue;
+            while (reader.nextField()) {
+                if (reader.fieldIs(name))
+                    return reader.stringValue();
+                reader.skipValue();
+            }
+            return null;
+        }
+        return null;
+    }
+
+    // 流式读取扁平的字符串映射 {"a":"x","b":"y"}，逐项交给consumer
+    public static void forEachEntry(byte[] payload, BiConsumer<String, String> consumer){
+        QueryResultReader reader = new QueryResultReader(payload, false);
+        if (reader.pos >= reader.end)
+            return;
+        reader.expect('{');
+        reader.skipWhitespace();
+        if (reader.peek() == '}')
+            return;
+        while (true) {
+            reader.readFieldName();
+            String name = reader.fieldName();
+            consumer.accept(name, reader.readValueAsString());
+            reader.skipWhitespace();
+            if (reader.peek() == '}')
+                return;
+            reader.expect(',');
+            reader.skipWhitespace();
+        }
+    }
+
+    // 跳过Record之后当前元素剩余的字段（包括可能出现在Record之后的Key）
+    private void finishElementFields(){
+        while (true) {
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return;
+            }
+            expect(',');
+            readFieldName();
+            if (fieldIs(KEY))
+                key = readValueAsString();
+            else
+                skipValue();
+        }
+    }
+
+    private String readValueAsString(){
+        skipWhitespace();
+        byte b = peek();
+        if (b == '"') {
+            int start = pos + 1;
+            int stop = scanString();
+            if (stop >= 0)
+                return new String(payload, start, stop - start, UTF_8);
+            // 含转义字符，回到开头逐个解码
+            pos = start - 1;
+            return decodeString();
+        }
+        int start = pos;
+        if (b == 'n' && matches("null")) {
+            pos += 4;
+            return null;
+        }
+        if (b == '{' || b == '[') {
+            skipValue();
+        } else {
+            skipLiteral();
+        }
+        return new String(payload, start, pos - start, UTF_8);
+    }
+
+    // 读取字段名和冒号；不含转义字符的字段名不复制
+    private void readFieldName(){
+        skipWhitespace();
+        int start = pos + 1;
+        int stop = scanString();
+        if (stop >= 0) {
+            fieldBuffer = payload;
+            fieldStart = start;
+            fieldLength = stop - start;
+        } else {
+            pos = start - 1;
+            fieldBuffer = decodeString().getBytes(UTF_8);
+            fieldStart = 0;
+            fieldLength = fieldBuffer.length;
+        }
+        skipWhitespace();
+        expect(':');
+    }
+
+    // 扫描pos处的字符串并移到其后；不含转义字符时返回结束引号的位置，否则返回-1
+    private int scanString(){
+        expect('"');
+        boolean escaped = false;
+        while (pos < end) {
+            byte b = payload[pos++];
+            if (b == '"')
+                return escaped ? -1 : pos - 1;
+            if (b == '\\') {
+                escaped = true;
+                pos++;
+            }
+        }
+        throw error("字符串未结束");
+    }
+
+    private String decodeString(){
+        expect('"');
+        byte[] buffer = new byte[16];
+        int length = 0;
+        while (true) {
+            if (pos >= end)
+                throw error("字符串未结束");
+            byte b = payload[pos++];
+            if (b == '"')
+                return new String(buffer, 0, length, UTF_8);
+            if (length + 4 > buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            if (b != '\\') {
+                buffer[length++] = b;
+                continue;
+            }
+            if (pos >= end)
+                throw error("字符串未结束");
+            byte c = payload[pos++];
+            switch (c) {
+                case 'b': buffer[length++] = '\b'; break;
+                case 'f': buffer[length++] = '\f'; break;
+                case 'n': buffer[length++] = '\n'; break;
+                case 'r': buffer[length++] = '\r'; break;
+                case 't': buffer[length++] = '\t'; break;
+                case 'u':
+                    int ch = readHex();
+                    if (Character.isHighSurrogate((char) ch) && pos + 1 < end
+                            && payload[pos] == '\\' && payload[pos + 1] == 'u') {
+                        pos += 2;
+                        int low = readHex();
+                        ch = Character.toCodePoint((char) ch, (char) low);
+                    }
+                    length = appendUtf8(buffer, length, ch);
+                    break;
+                default: buffer[length++] = c; break;
+            }
+        }
+    }
+
+    private int readHex(){
+        if (pos + 4 > end)
+            throw error("\\u转义不完整");
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(payload[pos++], 16);
+            if (digit < 0)
+                throw error("\\u转义不是十六进制");
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private static int appendUtf8(byte[] buffer, int length, int codePoint){
+        if (codePoint < 0x80) {
+            buffer[length++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            buffer[length++] = (byte) (0xC0 | codePoint >> 6);
+            buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            buffer[length++] = (byte) (0xE0 | codePoint >> 12);
+            buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            buffer[length++] = (byte) (0xF0 | codePoint >> 18);
+            buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+        }
+        return length;
+    }
+
+    // 跳过数字、true、false、null
+    private void skipLiteral(){
+        int start = pos;
+        while (pos < end) {
+            byte b = payload[pos];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r')
+                break;
+            pos++;
+        }
+        if (pos == start)
+            throw error("缺少值");
+    }
+
+    private boolean matches(String literal){
+        if (pos + literal.length() > end)
+            return false;
+        for (int i = 0; i < literal.length(); i++) {
+            if (payload[pos + i] != literal.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private void skipWhitespace(){
+        while (pos < end) {
+            byte b = payload[pos];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r')
+                return;
+            pos++;
+        }
+    }
+
+    private byte peek(){
+        if (pos >= end)
+            throw error("负载意外结束");
+        return payload[pos];
+    }
+
+    private void expect(char c){
+        if (peek() != c)
+            throw error("应为 '" + c + "'");
+        pos++;
+    }
+
+    private IllegalArgumentException error(String message){
+        return new IllegalArgumentException("查询结果格式错误（位置 " + pos + "）：" + message);
+    }
+}
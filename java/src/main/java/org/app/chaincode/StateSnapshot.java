@@ -0,0 +1,251 @@
+package org.app.chaincode;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 该类负责链码世界状态在本地的快照文件：按UTF-8字节序排列的键、定宽的值以及快照对应的区块高度，
+ * 以内存映射方式加载，加载时不解析条目，读取时在映射区上二分查找。
+ *
+ * 文件格式（大端）：
+ *   头部 HEADER_SIZE 字节：魔数、版本、区块高度、条目数、值宽度、各段偏移、文件长度、区块hash、头部CRC32
+ *   键偏移表：int[条目数 + 1]，键i位于键区的 [offsets[i], offsets[i + 1])
+ *   值区：每个条目 short长度 + 值宽度字节（不足补0）
+ *   键区：依次存放所有键的UTF-8字节
+ * 快照先写入临时文件并fsync，再原子地重命名为目标文件，因此不会读到写了一半的快照
+ */
+public class StateSnapshot {
+
+    private static final int MAGIC = 0x534e4150; // "SNAP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 128;
+    private static final int MAX_BLOCK_HASH = 64;
+
+    // 按UTF-8字节的无符号顺序比较，与快照中键的排列顺序一致
+    public static final Comparator<byte[]> KEY_ORDER = (a, b) -> {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0)
+                return c;
+        }
+        return a.length - b.length;
+    };
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final long height;
+    private final int count;
+    private final int valueWidth;
+    private final int offsetsStart;
+    private final int valuesStart;
+    private final int keysStart;
+    private final byte[] blockHash;
+
+    private StateSnapshot(File file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("不是快照文件：" + file);
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("不支持的快照版本 " + buffer.getInt(4) + "：" + file);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < HEADER_SIZE - 4; i++)
+            crc.update(buffer.get(i));
+        if ((int) crc.getValue() != buffer.getInt(HEADER_SIZE - 4))
+            throw new IOException("快照头部校验失败：" + file);
+        this.height = buffer.getLong(8);
+        this.count = buffer.getInt(16);
+        this.valueWidth = buffer.getInt(20);
+        this.offsetsStart = buffer.getInt(24);
+        this.valuesStart = buffer.getInt(28);
+        this.keysStart = buffer.getInt(32);
+        if (buffer.getLong(36) != buffer.capacity())
+            throw new IOException("快照文件长度不符：" + file);
+        int hashLength = buffer.get(44);
+        this.blockHash = new byte[hashLength];
+        for (int i = 0; i < hashLength; i++)
+            blockHash[i] = buffer.get(45 + i);
+    }
+
+    // 以内存映射方式加载快照
+    public static StateSnapshot load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() > Integer.MAX_VALUE)
+                throw new IOException("快照文件超过2GB：" + file);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return new StateSnapshot(file, buffer);
+        }
+    }
+
+    /**
+     * 写入快照。entries须按KEY_ORDER排列且键不重复，会被遍历两次：第一次计算各段大小，第二次写入
+     *
+     * @param height    快照包含的区块数，即下一个要应用的区块号
+     * @param blockHash 第height - 1号区块的hash，加载后用于确认链没有被重置
+     */
+    public static void write(File file, long height, byte[] blockHash, Iterable<Map.Entry<String, String>> entries) throws IOException {
+        if (blockHash.length > MAX_BLOCK_HASH)
+            throw new IllegalArgumentException("区块hash过长");
+        int count = 0;
+        int valueWidth = 0;
+        long keyBytes = 0;
+        for (Map.Entry<String, String> entry : entries) {
+            count++;
+            keyBytes += entry.getKey().getBytes(UTF_8).length;
+            valueWidth = Math.max(valueWidth, entry.getValue().getBytes(UTF_8).length);
+        }
+        if (valueWidth > Short.MAX_VALUE)
+            throw new IllegalArgumentException("值过长，无法写入定宽的值区");
+        long offsetsStart = HEADER_SIZE;
+        long valuesStart = offsetsStart + 4L * (count + 1);
+        long keysStart = valuesStart + (long) count * (2 + valueWidth);
+        long length = keysStart + keyBytes;
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("快照超过2GB");
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(height).putInt(count).putInt(valueWidth)
+                .putInt((int) offsetsStart).putInt((int) valuesStart).putInt((int) keysStart).putLong(length)
+                .put((byte) blockHash.length).put(blockHash);
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_SIZE - 4);
+        header.putInt(HEADER_SIZE - 4, (int) crc.getValue());
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("无法创建快照目录 " + directory);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.write(header.array());
+            int offset = 0;
+            out.writeInt(offset);
+            for (Map.Entry<String, String> entry : entries) {
+                offset += entry.getKey().getBytes(UTF_8).length;
+                out.writeInt(offset);
+            }
+            byte[] padding = new byte[valueWidth];
+            for (Map.Entry<String, String> entry : entries) {
+                byte[] value = entry.getValue().getBytes(UTF_8);
+                out.writeShort(value.length);
+                out.write(value);
+                out.write(padding, 0, valueWidth - value.length);
+            }
+            for (Map.Entry<String, String> entry : entries)
+                out.write(entry.getKey().getBytes(UTF_8));
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 读取键对应的值，不存在时返回null
+    public String get(String key){
+        int index = indexOf(key.getBytes(UTF_8));
+        return index < 0 ? null : value(index);
+    }
+
+    // 二分查找键的下标，不存在时返回负数
+    public int indexOf(byte[] key){
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compareKey(mid, key);
+            if (c < 0)
+                low = mid + 1;
+            else if (c > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    private int compareKey(int index, byte[] key){
+        int start = keysStart + buffer.getInt(offsetsStart + 4 * index);
+        int end = keysStart + buffer.getInt(offsetsStart + 4 * (index + 1));
+        int n = Math.min(end - start, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0)
+                return c;
+        }
+        return (end - start) - key.length;
+    }
+
+    public String key(int index){
+        int start = keysStart + buffer.getInt(offsetsStart + 4 * index);
+        int end = keysStart + buffer.getInt(offsetsStart + 4 * (index + 1));
+        return string(start, end - start);
+    }
+
+    public String value(int index){
+        int slot = valuesStart + index * (2 + valueWidth);
+        return string(slot + 2, buffer.getShort(slot));
+    }
+
+    private String string(int start, int length){
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // 按键的顺序遍历全部条目
+    public Iterable<Map.Entry<String, String>> entries(){
+        return () -> new Iterator<Map.Entry<String, String>>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext(){
+                return next < count;
+            }
+
+            @Override
+            public Map.Entry<String, String> next(){
+                if (next >= count)
+                    throw new NoSuchElementException();
+                int index = next++;
+                return new AbstractMap.SimpleImmutableEntry<>(key(index), value(index));
+            }
+        };
+    }
+
+    // 快照包含的区块数，即加载后下一个要应用的区块号
+    public long getHeight(){
+        return height;
+    }
+
+    public byte[] getBlockHash(){
+        return Arrays.copyOf(blockHash, blockHash.length);
+    }
+
+    public int size(){
+        return count;
+    }
+
+    public File getFile(){
+        return file;
+    }
+}
@@ -0,0 +1,120 @@
+package org.app.chaincode.authority;
+
+import org.app.client.BlockFollower;
+import org.app.client.BlockWrites;
+import org.app.client.FabricGateway;
+import org.app.config.Config;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.ChaincodeResponse;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 该类负责在本地维护cc_authority全部企业记录编译成的AuthorityTrie，供权限验证在本地完成，不调用链码。
+ * 启动时先记下链高度，再通过queryAllOrgs读取全部记录，然后从该高度起由BlockFollower应用区块中的initOrg写入；
+ * 每个含有cc_authority写入的区块应用后重新编译并整体替换基数树，读取方总是看到某个区块之后的完整状态。
+ * 链码不支持queryAllOrgs时从0号区块重放。
+ */
+public class AuthorityIndex {
+
+    private final BlockFollower follower;
+
+    // 账本键到企业记录，仅由follower线程修改
+    private final Map<String, OrgRecord> records = new HashMap<>();
+    private volatile AuthorityTrie trie = AuthorityTrie.EMPTY;
+    private boolean loaded;
+
+    public AuthorityIndex(){
+        this(Config.AUTHORITY_INDEX_MAX_STALENESS);
+    }
+
+    public AuthorityIndex(long maxStaleness){
+        this.follower = new BlockFollower("authority-index", 0, maxStaleness,
+                Config.AUTHORITY_INDEX_SYNC_INTERVAL, new BlockFollower.Handler() {
+            @Override
+            public void apply(BlockInfo block) throws Exception {
+                AuthorityIndex.this.apply(block);
+            }
+
+            @Override
+            public void onChainHeight(long chainHeight) throws Exception {
+                if (!loaded)
+                    load(chainHeight);
+            }
+        });
+    }
+
+    // 注册区块事件并开始定时同步
+    public void start(){
+        follower.start();
+    }
+
+    public void stop(){
+        follower.stop();
+    }
+
+    // 索引是否在允许的陈旧时长内与链保持一致
+    public boolean isFresh(){
+        return follower.isFresh();
+    }
+
+    // 当前的基数树，可在其上连续做多次权限判断
+    public AuthorityTrie getTrie(){
+        return trie;
+    }
+
+    // 企业org对标识identifier拥有的操作权限位；调用前应先检查isFresh
+    public int authority(String org, String identifier){
+        return trie.authority(org, identifier);
+    }
+
+    // 企业org是否拥有标识identifier上operation中的全部操作权限位；调用前应先检查isFresh
+    public boolean isAllowed(String org, String identifier, int operation){
+        return trie.isAllowed(org, identifier, operation);
+    }
+
+    // 已应用的区块数
+    public long getHeight(){
+        return follower.getHeight();
+    }
+
+    // 读取全部企业记录，之后从chainHeight号区块开始应用；链码不支持时从0号区块重放
+    private void load(long chainHeight){
+        try {
+            Collection<ProposalResponse> responses = FabricGateway.getInstance().getChannelClient().queryByChainCode(Config.CHAINCODE_1_NAME, "queryAllOrgs", new String[0]);
+            for (ProposalResponse pres : responses) {
+                if (pres.getStatus() != ChaincodeResponse.Status.SUCCESS)
+                    throw new ProposalException("读取全部企业信息失败：" + pres.getMessage());
+                records.clear();
+                for (OrgRecord record : OrgRecord.parse(pres.getChaincodeActionResponsePayload()))
+                    records.put(record.getKey(), record);
+            }
+            trie = AuthorityTrie.compile(records.values());
+            follower.reset(chainHeight);
+        } catch (Exception e) {
+            Logger.getLogger(AuthorityIndex.class.getName()).log(Level.WARNING, "读取全部企业信息失败，从0号区块重放", e);
+            records.clear();
+            follower.reset(0);
+        }
+        loaded = true;
+    }
+
+    private void apply(BlockInfo block) throws Exception {
+        boolean[] changed = new boolean[1];
+        BlockWrites.forEach(block, Config.CHAINCODE_1_NAME, (key, value, isDelete) -> {
+            if (isDelete)
+                records.remove(key);
+            else
+                records.put(key, OrgRecord.parseRecord(key, value));
+            changed[0] = true;
+        });
+        if (changed[0])
+            trie = AuthorityTrie.compile(records.values());
+    }
+}
@@ -0,0 +1,188 @@
+package org.app.chaincode.authority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 由cc_authority记录编译得到的不可变基数树（radix trie），按标识前缀索引各企业的操作权限。
+ * 查询时沿标识逐段向下匹配，取该企业拥有记录的最长前缀的权限位（最长前缀匹配）；
+ * 前缀只在标识的分隔处生效，即前缀之后须是标识结尾、'.'或'/'，因此 bupt 匹配 bupt/123 和 bupt.fnl/987，不匹配 buptx/1。
+ * 同一企业在同一前缀上有多条记录时，权限位取并集，公钥取账本键最大的一条记录的公钥。
+ */
+public class AuthorityTrie {
+
+    public static final AuthorityTrie EMPTY = compile(new ArrayList<>());
+
+    private final Node root;
+    private final int prefixes;
+
+    private AuthorityTrie(Node root, int prefixes){
+        this.root = root;
+        this.prefixes = prefixes;
+    }
+
+    // 编译企业记录，缺少企业名称、标识前缀或权限位为0的记录被忽略
+    public static AuthorityTrie compile(Collection<OrgRecord> records){
+        List<OrgRecord> sorted = new ArrayList<>(records);
+        sorted.sort(Comparator.comparing(OrgRecord::getKey, Comparator.nullsFirst(Comparator.naturalOrder())));
+        Builder root = new Builder();
+        int prefixes = 0;
+        for (OrgRecord record : sorted) {
+            String prefix = record.getIdentityPrefix();
+            int bits = record.getAuthorityBits();
+            if (record.getOrgName() == null || prefix == null || prefix.isEmpty() || bits == 0)
+                continue;
+            Builder node = root;
+            for (int i = 0; i < prefix.length(); i++)
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Builder());
+            if (node.grants.isEmpty())
+                prefixes++;
+            String orgName = record.getOrgName().toLowerCase();
+            Grant previous = node.grants.get(orgName);
+            node.grants.put(orgName, new Grant(orgName, prefix, previous == null ? bits : previous.authority | bits,
+                    record.getPublicKey()));
+        }
+        return new AuthorityTrie(root.compile(), prefixes);
+    }
+
+    /**
+     * 企业org对标识identifier拥有的操作权限位，没有匹配的前缀时为0
+     */
+    public int authority(String org, String identifier){
+        Grant grant = match(org, identifier);
+        return grant == null ? 0 : grant.authority;
+    }
+
+    /**
+     * 企业org在标识identifier上最长匹配前缀的授权，没有匹配的前缀时为null
+     */
+    public Grant match(String org, String identifier){
+        String orgName = org.toLowerCase();
+        Node node = root;
+        int pos = 0;
+        Grant grant = null;
+        while (true) {
+            if (node.orgs.length > 0 && boundary(identifier, pos)) {
+                int index = Arrays.binarySearch(node.orgs, orgName);
+                if (index >= 0)
+                    grant = node.grants[index];
+            }
+            if (pos >= identifier.length())
+                return grant;
+            int child = Arrays.binarySearch(node.first, identifier.charAt(pos));
+            if (child < 0)
+                return grant;
+            String label = node.labels[child];
+            if (!identifier.startsWith(label, pos))
+                return grant;
+            pos += label.length();
+            node = node.children[child];
+        }
+    }
+
+    /**
+     * 企业org是否拥有标识identifier上operation中的全部操作权限位
+     */
+    public boolean isAllowed(String org, String identifier, int operation){
+        return (authority(org, identifier) & operation) == operation;
+    }
+
+    // 不同标识前缀的个数
+    public int size(){
+        return prefixes;
+    }
+
+    private static boolean boundary(String identifier, int pos){
+        if (pos == 0)
+            return false;
+        if (pos >= identifier.length())
+            return true;
+        char next = identifier.charAt(pos);
+        char last = identifier.charAt(pos - 1);
+        return next == '.' || next == '/' || last == '.' || last == '/';
+    }
+
+    // 编译期的逐字符节点
+    private static class Builder {
+        final TreeMap<Character, Builder> children = new TreeMap<>();
+        final TreeMap<String, Grant> grants = new TreeMap<>();
+
+        // 合并只有一个子节点且没有权限记录的节点链，压缩为基数树节点
+        Node compile(){
+            int n = children.size();
+            char[] first = new char[n];
+            String[] labels = new String[n];
+            Node[] nodes = new Node[n];
+            int i = 0;
+            for (Map.Entry<Character, Builder> entry : children.entrySet()) {
+                StringBuilder label = new StringBuilder().append(entry.getKey());
+                Builder child = entry.getValue();
+                while (child.grants.isEmpty() && child.children.size() == 1) {
+                    Map.Entry<Character, Builder> only = child.children.firstEntry();
+                    label.append(only.getKey());
+                    child = only.getValue();
+                }
+                first[i] = entry.getKey();
+                labels[i] = label.toString();
+                nodes[i] = child.compile();
+                i++;
+            }
+            return new Node(first, labels, nodes, grants.keySet().toArray(new String[0]),
+                    grants.values().toArray(new Grant[0]));
+        }
+    }
+
+    // 基数树节点：子节点按边的首字符排序，企业名按字典序排序
+    private static class Node {
+        final char[] first;
+        final String[] labels;
+        final Node[] children;
+        final String[] orgs;
+        final Grant[] grants;
+
+        Node(char[] first, String[] labels, Node[] children, String[] orgs, Grant[] grants){
+            this.first = first;
+            this.labels = labels;
+            this.children = children;
+            this.orgs = orgs;
+            this.grants = grants;
+        }
+    }
+
+    // 企业在一个标识前缀上的授权：操作权限位与公钥
+    public static class Grant {
+        private final String orgName;
+        private final String prefix;
+        private final int authority;
+        private final String publicKey;
+
+        Grant(String orgName, String prefix, int authority, String publicKey){
+            this.orgName = orgName;
+            this.prefix = prefix;
+            this.authority = authority;
+            this.publicKey = publicKey;
+        }
+
+        public String getOrgName(){
+            return orgName;
+        }
+
+        public String getPrefix(){
+            return prefix;
+        }
+
+        public int getAuthority(){
+            return authority;
+        }
+
+        // base64编码的公钥
+        public String getPublicKey(){
+            return publicKey;
+        }
+    }
+}
@@ -1,17 +1,18 @@
 package org.app.chaincode.authority;
 
-import org.app.client.CAClient;
+import org.app.client.AdaptiveLimiter;
 import org.app.client.ChannelClient;
-import org.app.client.FabricClient;
+import org.app.client.FabricGateway;
 import org.app.config.Config;
-import org.app.user.UserContext;
-import org.app.util.Util;
 import org.hyperledger.fabric.sdk.*;
+import org.hyperledger.fabric.sdk.BlockEvent.TransactionEvent;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
 import org.json.JSONException;
 import org.json.JSONObject;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,74 +25,68 @@ public class InvokeAuthority {
     private  final byte[] EXPECTED_EVENT_DATA = "!".getBytes(UTF_8);
     private  final String EXPECTED_EVENT_NAME = "event";
 
-    private static FabricClient fabClient_invoke;
-    private static ChannelClient channelClient_invoke;
+    // 网关的配置信息，网关在每次写入时获取，启动失败的网关会被替换
+    private JSONObject configJson;
 
-    private static int num = 0;
+    // 写入序号，可能被多个线程同时调用
+    private static final AtomicInteger num = new AtomicInteger();
 
     // 初始化配置信息
     public InvokeAuthority(JSONObject configJson){
-        try {
-            Util.cleanUp();
-            String caUrl = configJson.getString("caUrl");
-            CAClient caClient = new CAClient(caUrl, null);
-            // Enroll Admin to Org1MSP
-            UserContext adminUserContext = new UserContext();
-            adminUserContext.setName(configJson.getString("Admin"));
-            adminUserContext.setAffiliation(Config.ORG1);
-            adminUserContext.setMspId(Config.ORG1_MSP);
-            caClient.setAdminUserContext(adminUserContext);
-            adminUserContext = caClient.enrollAdminUser(configJson.getString("Admin"), configJson.getString("Adminpw"));
-
-            fabClient_invoke = new FabricClient(adminUserContext);
-
-            channelClient_invoke = fabClient_invoke.createChannelClient(Config.CHANNEL_NAME);
-            Channel channel = channelClient_invoke.getChannel();
-            Orderer orderer = fabClient_invoke.getInstance().newOrderer(configJson.getString("Orderer_Name"), configJson.getString("Orderer_Address"));
-            Peer peer = fabClient_invoke.getInstance().newPeer(configJson.getString("Eroll_Name"), configJson.getString("Eroll_Address"));
-            channel.addOrderer(orderer);
-            channel.addPeer(peer);
-            channel.initialize();
-            System.out.println("\n【系统提示】- 准备向区块链写入企业注册信息");
-
-        } catch (Exception e) {
-            System.out.println("配置信息初始化失败！");
-            e.printStackTrace();
-        }
+        this.configJson = configJson;
+        FabricGateway.getInstance(configJson);
+        System.out.println("\n【系统提示】- 准备向区块链写入企业注册信息");
     }
 
-    // 写入企业信息
+    // 写入企业信息，交易发往排序节点后返回；与映射数据hash的写入共用写入窗口，窗口已满时阻塞
     public void invoke(JSONObject dataJson){
         try {
-            TransactionProposalRequest request = fabClient_invoke.getInstance().newTransactionProposalRequest();
-            ChaincodeID ccid = ChaincodeID.newBuilder().setName(Config.CHAINCODE_1_NAME).build();
-            request.setChaincodeID(ccid);
-            request.setFcn("initOrg");
             String[] arguments = new String[5];
             arguments[0] = dataJson.getString("item_num");
             arguments[1] = dataJson.getString("org_name");
             arguments[2] = dataJson.getString("identity_prefix");
             arguments[3] = dataJson.getString("public_key");
             arguments[4] = dataJson.getString("authority");
-            request.setArgs(arguments);
-            request.setProposalWaitTime(1000);
-
-            Map<String, byte[]> tm2 = new HashMap<>();
-            tm2.put("HyperLedgerFabric", "TransactionProposalRequest:JavaSDK".getBytes(UTF_8));
-            tm2.put("method", "TransactionProposalRequest".getBytes(UTF_8));
-            tm2.put("result", ":)".getBytes(UTF_8));
-            tm2.put(EXPECTED_EVENT_NAME, EXPECTED_EVENT_DATA);
-            request.setTransientMap(tm2);
-            Collection<ProposalResponse> responses = channelClient_invoke.sendTransactionProposal(request);
-            for (ProposalResponse res: responses) {
-                ChaincodeResponse.Status status = res.getStatus();
-                System.out.println("[" + num++ + "] 写入企业 " + arguments[1] + " - " + status);
+            FabricGateway gateway = FabricGateway.getInstance(configJson);
+            AdaptiveLimiter.Permit permit = gateway.getWriteLimiter().acquire();
+            CompletableFuture<TransactionEvent> committed;
+            try {
+                // 按记录编号选择提交条带；背书失败时换一组节点重试，每次重试都需要新的交易提案
+                ChannelClient channelClient = gateway.getSubmissionEngine().stripe(arguments[0]);
+                committed = channelClient.sendTransactionAsync(() -> newInitOrgRequest(channelClient, arguments));
+            } catch (Exception e) {
+                permit.complete(e);
+                throw e;
             }
+            // 交易提交或失败后归还写入窗口
+            committed.whenComplete((event, e) -> permit.complete(e));
+            // 背书失败时抛出异常
+            if (committed.isCompletedExceptionally())
+                committed.join();
+            System.out.println("[" + num.getAndIncrement() + "] 写入企业 " + arguments[1] + " - " + ChaincodeResponse.Status.SUCCESS);
         } catch (Exception e) {
             System.out.println("写入数据失败！");
             e.printStackTrace();
         }
     }
+
+    // 构造cc_authority交易提案
+    private TransactionProposalRequest newInitOrgRequest(ChannelClient channelClient, String[] arguments) throws InvalidArgumentException {
+        TransactionProposalRequest request = channelClient.getFabClient().getInstance().newTransactionProposalRequest();
+        ChaincodeID ccid = ChaincodeID.newBuilder().setName(Config.CHAINCODE_1_NAME).build();
+        request.setChaincodeID(ccid);
+        request.setFcn("initOrg");
+        request.setArgs(arguments);
+        request.setProposalWaitTime(Config.PROPOSAL_WAIT_TIME);
+
+        Map<String, byte[]> tm2 = new HashMap<>();
+        tm2.put("HyperLedgerFabric", "TransactionProposalRequest:JavaSDK".getBytes(UTF_8));
+        tm2.put("method", "TransactionProposalRequest".getBytes(UTF_8));
+        tm2.put("result", ":)".getBytes(UTF_8));
+        tm2.put(EXPECTED_EVENT_NAME, EXPECTED_EVENT_DATA);
+        request.setTransientMap(tm2);
+        return request;
+    }
     public static void main(String[] args) throws JSONException {
 
         JSONObject configJson = new JSONObject();
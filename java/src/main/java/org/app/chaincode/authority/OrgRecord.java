@@ -0,0 +1,111 @@
+package org.app.chaincode.authority;
+
+import org.app.chaincode.QueryResultReader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * cc_authority中的一条企业信息：企业名称、标识前缀、公钥以及对应的操作权限
+ */
+public class OrgRecord {
+
+    private static final byte[] ITEM_NUM = "item_num".getBytes(UTF_8);
+    private static final byte[] ORG_NAME = "org_name".getBytes(UTF_8);
+    private static final byte[] IDENTITY_PREFIX = "identity_prefix".getBytes(UTF_8);
+    private static final byte[] PUBLIC_KEY = "public_key".getBytes(UTF_8);
+    private static final byte[] AUTHORITY = "authority".getBytes(UTF_8);
+
+    private final String key;
+    private final String itemNum;
+    private final String orgName;
+    private final String identityPrefix;
+    private final String publicKey;
+    private final String authority;
+
+    public OrgRecord(String key, String itemNum, String orgName, String identityPrefix, String publicKey, String authority){
+        this.key = key;
+        this.itemNum = itemNum;
+        this.orgName = orgName;
+        this.identityPrefix = identityPrefix;
+        this.publicKey = publicKey;
+        this.authority = authority;
+    }
+
+    // 流式解析queryInfoByOrg的返回负载
+    public static List<OrgRecord> parse(byte[] payload){
+        List<OrgRecord> records = new ArrayList<>();
+        QueryResultReader reader = new QueryResultReader(payload);
+        while (reader.next()) {
+            String itemNum = null, orgName = null, identityPrefix = null, publicKey = null, authority = null;
+            while (reader.nextField()) {
+                if (reader.fieldIs(ITEM_NUM))
+                    itemNum = reader.stringValue();
+                else if (reader.fieldIs(ORG_NAME))
+                    orgName = reader.stringValue();
+                else if (reader.fieldIs(IDENTITY_PREFIX))
+                    identityPrefix = reader.stringValue();
+                else if (reader.fieldIs(PUBLIC_KEY))
+                    publicKey = reader.stringValue();
+                else if (reader.fieldIs(AUTHORITY))
+                    authority = reader.stringValue();
+                else
+                    reader.skipValue();
+            }
+            records.add(new OrgRecord(reader.key(), itemNum, orgName, identityPrefix, publicKey, authority));
+        }
+        return records;
+    }
+
+    // 解析账本中键为key的一条记录（区块写集中的值）
+    public static OrgRecord parseRecord(String key, byte[] value){
+        Map<String, String> fields = new HashMap<>();
+        QueryResultReader.forEachEntry(value, fields::put);
+        return new OrgRecord(key, fields.get("item_num"), fields.get("org_name"), fields.get("identity_prefix"),
+                fields.get("public_key"), fields.get("authority"));
+    }
+
+    // 记录在账本中的键
+    public String getKey(){
+        return key;
+    }
+
+    public String getItemNum(){
+        return itemNum;
+    }
+
+    public String getOrgName(){
+        return orgName;
+    }
+
+    public String getIdentityPrefix(){
+        return identityPrefix;
+    }
+
+    public String getPublicKey(){
+        return publicKey;
+    }
+
+    public String getAuthority(){
+        return authority;
+    }
+
+    // 操作权限的位掩码，格式错误时为0
+    public int getAuthorityBits(){
+        try {
+            return authority == null ? 0 : Integer.parseInt(authority.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString(){
+        return "OrgRecord{key=" + key + ", org_name=" + orgName + ", identity_prefix=" + identityPrefix
+                + ", authority=" + authority + "}";
+    }
+}
@@ -1,16 +1,17 @@
 package org.app.chaincode.authority;
 
-import org.app.client.CAClient;
-import org.app.client.ChannelClient;
-import org.app.client.FabricClient;
+import org.app.chaincode.QueryResultReader;
+import org.app.client.FabricGateway;
 import org.app.config.Config;
-import org.app.user.UserContext;
-import org.app.util.Util;
 import org.hyperledger.fabric.sdk.*;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import net.sf.json.JSONException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -20,45 +21,23 @@ import java.util.logging.Logger;
  */
 public class QueryAuthority {
 
-    private static ChannelClient channelClient_query;
+    // cc_authority全部企业记录的本地基数树索引，未启用时为null
+    private static final AuthorityIndex index = Config.AUTHORITY_INDEX_ENABLED ? new AuthorityIndex() : null;
 
     // 初始化配置信息
+    // 网关在每次读取时获取，启动失败的网关会被替换
     static {
-        try {
-            Util.cleanUp();
-            String caUrl = Config.CA_ORG1_URL;
-            CAClient caClient = new CAClient(caUrl, null);
-            // Enroll Admin to Org1MSP
-            UserContext adminUserContext = new UserContext();
-            adminUserContext.setName(Config.ADMIN);
-            adminUserContext.setAffiliation(Config.ORG1);
-            adminUserContext.setMspId(Config.ORG1_MSP);
-            caClient.setAdminUserContext(adminUserContext);
-            adminUserContext = caClient.enrollAdminUser(Config.ADMIN, Config.ADMIN_PASSWORD);
-
-            FabricClient fabClient_query = new FabricClient(adminUserContext);
-
-            channelClient_query = fabClient_query.createChannelClient(Config.CHANNEL_NAME);
-            Channel channel = channelClient_query.getChannel();
-
-            Orderer orderer = fabClient_query.getInstance().newOrderer(Config.ORDERER_NAME, Config.ORDERER_URL);
-            Peer peer = fabClient_query.getInstance().newPeer("peer0.org1.example.com", "grpc://localhost:7051");
-            channel.addOrderer(orderer);
-            channel.addPeer(peer);
-            channel.initialize();
-            Logger.getLogger(QueryAuthority.class.getName()).log(Level.INFO, " 准备进行权限验证...");
-
-        } catch (Exception e) {
-            System.out.println("配置信息初始化失败！");
-            e.printStackTrace();
-        }
+        FabricGateway.getInstance();
+        if (index != null)
+            index.start();
+        Logger.getLogger(QueryAuthority.class.getName()).log(Level.INFO, " 准备进行权限验证...");
     }
 
     // 读取企业信息
     public static JSONArray query(String org_name){
         JSONArray jsonArrayResponse = null;
         try {
-            Collection<ProposalResponse>  responses1Query = channelClient_query.queryByChainCode(Config.CHAINCODE_1_NAME, "queryInfoByOrg", new String[]{org_name});
+            Collection<ProposalResponse>  responses1Query = FabricGateway.getInstance().getChannelClient().queryByChainCode(Config.CHAINCODE_1_NAME, "queryInfoByOrg", new String[]{org_name});
             for (ProposalResponse pres : responses1Query) {
                 String stringResponse = new String(pres.getChaincodeActionResponsePayload());
                 jsonArrayResponse = JSONArray.fromObject(stringResponse);
@@ -70,6 +49,62 @@ public class QueryAuthority {
         }
         return jsonArrayResponse;
     }
+
+    // 读取企业信息，直接从负载字节流式解析为OrgRecord，不经过json-lib；读取失败时返回空列表
+    public static List<OrgRecord> queryRecords(String org_name){
+        try {
+            return OrgRecord.parse(queryPayload(org_name));
+        } catch (Exception e) {
+            System.out.println("读取数据失败！");
+            e.printStackTrace();
+        }
+        return Collections.emptyList();
+    }
+
+    // 读取企业第一条记录中的单个字段（如public_key），不解析其余字段；企业不存在或读取失败时返回null
+    public static String queryField(String org_name, String field){
+        try {
+            return QueryResultReader.field(queryPayload(org_name), 0, field);
+        } catch (Exception e) {
+            System.out.println("读取数据失败！");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // 企业对标识拥有的操作权限位（最长前缀匹配），索引落后时读取该企业的记录现场编译；读取失败时为0
+    public static int authority(String org_name, String identifier){
+        AuthorityTrie.Grant grant = match(org_name, identifier);
+        return grant == null ? 0 : grant.getAuthority();
+    }
+
+    // 企业在标识上最长匹配前缀的授权（权限位与公钥），没有匹配的前缀或读取失败时为null
+    public static AuthorityTrie.Grant match(String org_name, String identifier){
+        if (index != null && index.isFresh())
+            return index.getTrie().match(org_name, identifier);
+        return AuthorityTrie.compile(queryRecords(org_name)).match(org_name, identifier);
+    }
+
+    // 企业是否拥有标识上operation中的全部操作权限位
+    public static boolean isAllowed(String org_name, String identifier, int operation){
+        return (authority(org_name, identifier) & operation) == operation;
+    }
+
+    // cc_authority的本地索引，未启用时返回null
+    public static AuthorityIndex getIndex(){
+        return index;
+    }
+
+    private static byte[] queryPayload(String org_name) throws InvalidArgumentException, ProposalException {
+        byte[] payload = null;
+        Collection<ProposalResponse> responses1Query = FabricGateway.getInstance().getChannelClient().queryByChainCode(Config.CHAINCODE_1_NAME, "queryInfoByOrg", new String[]{org_name});
+        for (ProposalResponse pres : responses1Query) {
+            if (pres.getStatus() != ChaincodeResponse.Status.SUCCESS)
+                throw new ProposalException("读取企业 " + org_name + " 失败：" + pres.getMessage());
+            payload = pres.getChaincodeActionResponsePayload();
+        }
+        return payload;
+    }
 //    public static void main(String[] args) throws JSONException {
 
 //        JSONObject configJson = new JSONObject();
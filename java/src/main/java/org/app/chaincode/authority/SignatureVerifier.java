@@ -0,0 +1,133 @@
+package org.app.chaincode.authority;
+
+import org.app.config.Config;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 该类负责用企业在cc_authority中登记的公钥验证DHT操作的签名。
+ * 操作标识按最长前缀匹配到企业的授权，授权中的base64公钥解码后按企业和前缀缓存，公钥变更时重新解码；
+ * 每个线程复用自己的Signature实例。批量验证在fork-join线程池上按区间拆分并行执行。
+ */
+public class SignatureVerifier {
+
+    // 区间不超过该长度时不再拆分
+    private static final int BATCH_THRESHOLD = 16;
+
+    private final String algorithm;
+    private final ForkJoinPool pool;
+    // 查找企业在标识上的授权
+    private final BiFunction<String, String, AuthorityTrie.Grant> grants;
+
+    // 企业名 + 前缀 到已解码的公钥
+    private final Map<String, DecodedKey> keys = new ConcurrentHashMap<>();
+    private final ThreadLocal<Signature> signatures;
+
+    public SignatureVerifier(){
+        this(Config.SIGNATURE_ALGORITHM, new ForkJoinPool(Config.SIGNATURE_VERIFY_PARALLELISM), QueryAuthority::match);
+    }
+
+    public SignatureVerifier(String algorithm, ForkJoinPool pool, BiFunction<String, String, AuthorityTrie.Grant> grants){
+        this.algorithm = algorithm;
+        this.pool = pool;
+        this.grants = grants;
+        this.signatures = ThreadLocal.withInitial(() -> {
+            try {
+                return Signature.getInstance(algorithm);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("不支持的签名算法 " + algorithm, e);
+            }
+        });
+    }
+
+    // 验证单个操作的签名，企业在该标识上没有授权、公钥无法解码或签名不符时返回false
+    public boolean verify(SignedOperation operation){
+        try {
+            AuthorityTrie.Grant grant = grants.apply(operation.getOrgName(), operation.getIdentifier());
+            if (grant == null || grant.getPublicKey() == null)
+                return false;
+            Signature signature = signatures.get();
+            signature.initVerify(publicKey(grant));
+            signature.update(operation.getData());
+            return signature.verify(operation.getSignature());
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            Logger.getLogger(SignatureVerifier.class.getName()).log(Level.FINE, "签名验证失败：" + operation.getIdentifier(), e);
+            return false;
+        }
+    }
+
+    // 并行验证一批操作，返回与操作一一对应的验证结果
+    public boolean[] verifyAll(List<SignedOperation> operations){
+        boolean[] results = new boolean[operations.size()];
+        pool.invoke(new VerifyTask(operations, results, 0, results.length));
+        return results;
+    }
+
+    // 取出授权公钥的解码结果，缓存中的base64与授权中的不同时重新解码
+    PublicKey publicKey(AuthorityTrie.Grant grant) throws GeneralSecurityException {
+        String cacheKey = grant.getOrgName() + '\n' + grant.getPrefix();
+        DecodedKey decoded = keys.get(cacheKey);
+        if (decoded == null || !decoded.encoded.equals(grant.getPublicKey())) {
+            byte[] bytes = Base64.getMimeDecoder().decode(grant.getPublicKey());
+            PublicKey key = KeyFactory.getInstance(Config.PUBLIC_KEY_ALGORITHM).generatePublic(new X509EncodedKeySpec(bytes));
+            decoded = new DecodedKey(grant.getPublicKey(), key);
+            keys.put(cacheKey, decoded);
+        }
+        return decoded.key;
+    }
+
+    // 已缓存的公钥个数
+    public int getCachedKeyCount(){
+        return keys.size();
+    }
+
+    private class VerifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<SignedOperation> operations;
+        private final boolean[] results;
+        private final int from;
+        private final int to;
+
+        VerifyTask(List<SignedOperation> operations, boolean[] results, int from, int to){
+            this.operations = operations;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if (to - from <= BATCH_THRESHOLD) {
+                for (int i = from; i < to; i++)
+                    results[i] = verify(operations.get(i));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new VerifyTask(operations, results, from, middle), new VerifyTask(operations, results, middle, to));
+        }
+    }
+
+    private static class DecodedKey {
+        final String encoded;
+        final PublicKey key;
+
+        DecodedKey(String encoded, PublicKey key){
+            this.encoded = encoded;
+            this.key = key;
+        }
+    }
+}
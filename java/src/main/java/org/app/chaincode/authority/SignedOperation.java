@@ -0,0 +1,35 @@
+package org.app.chaincode.authority;
+
+/**
+ * 一次带签名的DHT操作：发起企业、操作的标识、被签名的数据以及签名
+ */
+public class SignedOperation {
+
+    private final String orgName;
+    private final String identifier;
+    private final byte[] data;
+    private final byte[] signature;
+
+    public SignedOperation(String orgName, String identifier, byte[] data, byte[] signature){
+        this.orgName = orgName;
+        this.identifier = identifier;
+        this.data = data;
+        this.signature = signature;
+    }
+
+    public String getOrgName(){
+        return orgName;
+    }
+
+    public String getIdentifier(){
+        return identifier;
+    }
+
+    public byte[] getData(){
+        return data;
+    }
+
+    public byte[] getSignature(){
+        return signature;
+    }
+}
@@ -0,0 +1,138 @@
+package org.app.chaincode.hash;
+
+import net.sf.json.JSONObject;
+import org.app.client.ChaincodeRejectedException;
+import org.app.config.Config;
+import org.hyperledger.fabric.sdk.BlockEvent.TransactionEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 该类负责将多笔映射数据hash的写入合并为一笔cc_hash交易，待写入标识数达到上限或等待超时后提交。
+ * 链码拒绝整个批次时逐笔重新提交，只让有问题的写入失败
+ */
+public class HashBatcher {
+
+    private final InvokeHash invokeHash;
+    // 单笔交易包含的标识数上限
+    private final int maxBatchSize;
+    // 首个待写入标识的最长等待时间（毫秒）
+    private final long maxDelay;
+
+    private final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "hash-batcher-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 待写入的标识，由this保护
+    private List<PendingWrite> pending;
+    private ScheduledFuture<?> flushTask;
+
+    public HashBatcher(InvokeHash invokeHash){
+        this(invokeHash, Config.HASH_BATCH_SIZE, Config.HASH_BATCH_TIMEOUT);
+    }
+
+    public HashBatcher(InvokeHash invokeHash, int maxBatchSize, long maxDelay){
+        this.invokeHash = invokeHash;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.pending = new ArrayList<>(maxBatchSize);
+    }
+
+    // 加入一笔待写入的映射数据hash，返回的future在所属批次的交易提交后完成
+    public CompletableFuture<TransactionEvent> add(JSONObject dataJson){
+        return add(dataJson.getString("identifier"), dataJson.getString("mappingData_hash"));
+    }
+
+    public CompletableFuture<TransactionEvent> add(String identifier, String mappingDataHash){
+        PendingWrite write = new PendingWrite(identifier, mappingDataHash);
+        List<PendingWrite> batch = null;
+        synchronized (this) {
+            pending.add(write);
+            if (pending.size() >= maxBatchSize)
+                batch = drain();
+            else if (pending.size() == 1)
+                flushTask = flushTimer.schedule(this::flush, maxDelay, TimeUnit.MILLISECONDS);
+        }
+        if (batch != null)
+            submit(batch);
+        return write.future;
+    }
+
+    // 立即提交当前所有待写入的标识
+    public void flush(){
+        List<PendingWrite> batch;
+        synchronized (this) {
+            if (pending.isEmpty())
+                return;
+            batch = drain();
+        }
+        submit(batch);
+    }
+
+    private List<PendingWrite> drain(){
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        List<PendingWrite> batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        return batch;
+    }
+
+    private void submit(List<PendingWrite> batch){
+        String[] arguments = new String[batch.size() * 2];
+        for (int i = 0; i < batch.size(); i++) {
+            arguments[2 * i] = batch.get(i).identifier;
+            arguments[2 * i + 1] = batch.get(i).mappingDataHash;
+        }
+        try {
+            invokeHash.submitAsync("invokeMappingDataHashBatch", arguments).whenComplete((event, e) -> {
+                if (e != null && batch.size() > 1 && rejected(e)) {
+                    // 提交会等待写入窗口，不能在完成回调中进行
+                    for (PendingWrite write : batch)
+                        flushTimer.execute(() -> submit(Collections.singletonList(write)));
+                    return;
+                }
+                for (PendingWrite write : batch) {
+                    if (e != null)
+                        write.future.completeExceptionally(e);
+                    else
+                        write.future.complete(event);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (PendingWrite write : batch)
+                write.future.completeExceptionally(e);
+        }
+    }
+
+    // 交易提案是否被链码拒绝，重试不会成功
+    static boolean rejected(Throwable e){
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ChaincodeRejectedException)
+                return true;
+        }
+        return false;
+    }
+
+    private static class PendingWrite {
+        final String identifier;
+        final String mappingDataHash;
+        final CompletableFuture<TransactionEvent> future = new CompletableFuture<>();
+
+        PendingWrite(String identifier, String mappingDataHash){
+            this.identifier = identifier;
+            this.mappingDataHash = mappingDataHash;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.app.chaincode.hash;
+
+import org.app.client.BlockWrites;
+import org.app.config.Config;
+import org.hyperledger.fabric.sdk.BlockEvent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 该类负责在进程内缓存标识到映射数据hash的读取结果，按容量淘汰、按TTL过期，并在cc_hash交易提交后失效对应标识。
+ * 缓存按标识hash分成若干段，每段是一个独立加锁的LRU，读取只锁所在的段。
+ * 每个缓存项带有版本号：失效时写入带新版本号的墓碑，查询结果以查询前取得的版本号写回，
+ * 标识在查询期间被失效时写回被丢弃，其他标识的失效不影响写回
+ */
+public class HashCache {
+
+    private static final int SEGMENTS = 16;
+
+    // 缓存有效期（毫秒）
+    private final long ttl;
+    private final Segment[] segments;
+    // 版本时钟，每次失效加一
+    private final AtomicLong clock = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public HashCache(int capacity, long ttl){
+        this.ttl = ttl;
+        this.segments = new Segment[SEGMENTS];
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(segmentCapacity);
+    }
+
+    private Segment segment(String identifier){
+        int h = identifier.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    // 读取缓存的映射数据hash，未命中、已失效或已过期时返回null
+    public String get(String identifier){
+        long now = System.currentTimeMillis();
+        Segment segment = segment(identifier);
+        synchronized (segment) {
+            CachedHash entry = segment.get(identifier);
+            if (entry != null && entry.mappingDataHash != null && entry.expireAt > now) {
+                hits.increment();
+                return entry.mappingDataHash;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    // 查询前取得的版本号，查询结果写回时若该标识在此之后被失效则丢弃
+    public long stamp(){
+        return clock.get();
+    }
+
+    public void put(String identifier, String mappingDataHash, long stamp){
+        CachedHash entry = new CachedHash(mappingDataHash, System.currentTimeMillis() + ttl, stamp);
+        Segment segment = segment(identifier);
+        synchronized (segment) {
+            CachedHash current = segment.get(identifier);
+            // 查询期间该标识被失效（墓碑版本更新），或已有更晚发起的查询写回
+            if (stamp < segment.floor || current != null && current.version > stamp)
+                return;
+            segment.put(identifier, entry);
+        }
+    }
+
+    public void invalidate(String identifier){
+        Segment segment = segment(identifier);
+        synchronized (segment) {
+            segment.put(identifier, new CachedHash(null, 0, clock.incrementAndGet()));
+        }
+    }
+
+    public void invalidateAll(){
+        long version = clock.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.floor = Math.max(segment.floor, version);
+            }
+        }
+    }
+
+    // 区块事件回调：失效区块中有效交易写入的cc_hash标识
+    public void onBlock(BlockEvent blockEvent){
+        try {
+            BlockWrites.forEach(blockEvent, Config.CHAINCODE_2_NAME, (key, value, isDelete) -> invalidate(key));
+        } catch (Exception e) {
+            Logger.getLogger(HashCache.class.getName()).log(Level.WARNING, "区块解析失败，清空映射数据hash缓存", e);
+            invalidateAll();
+        }
+    }
+
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    // 缓存的标识数，不含墓碑
+    public int size(){
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (CachedHash entry : segment.values()) {
+                    if (entry.mappingDataHash != null)
+                        size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    // mappingDataHash为null的缓存项是失效留下的墓碑
+    private static class CachedHash {
+        final String mappingDataHash;
+        final long expireAt;
+        final long version;
+
+        CachedHash(String mappingDataHash, long expireAt, long version){
+            this.mappingDataHash = mappingDataHash;
+            this.expireAt = expireAt;
+            this.version = version;
+        }
+    }
+
+    // 按访问顺序排列的一段缓存，超出容量时淘汰最久未访问的标识，由自身保护
+    private static class Segment extends LinkedHashMap<String, CachedHash> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        // 已淘汰缓存项的最大版本号，版本号更早的写回无法与被淘汰的项比较，一律丢弃
+        long floor;
+
+        Segment(int capacity){
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedHash> eldest){
+            if (size() <= capacity)
+                return false;
+            floor = Math.max(floor, eldest.getValue().version);
+            return true;
+        }
+    }
+}
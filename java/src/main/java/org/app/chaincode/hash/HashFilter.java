@@ -0,0 +1,214 @@
+package org.app.chaincode.hash;
+
+import org.app.client.BlockFollower;
+import org.app.client.BlockWrites;
+import org.app.config.Config;
+import org.app.metrics.Counter;
+import org.app.metrics.Gauge;
+import org.app.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 该类负责维护所有写入过cc_hash的标识的布隆过滤器，供QueryHash在本地直接回答未注册的标识，省去一次背书查询。
+ * 过滤器通过BlockFollower从0号区块开始应用区块的写集（即扫描账本重建），之后由区块事件增量更新。
+ *
+ * 采用可扩展布隆过滤器：当前一级写满设计容量后追加一级，容量翻倍、误判率减半，
+ * 各级误判率之和不超过设定值。标识被删除后仍留在过滤器中，只会多一次peer查询。
+ * 过滤器与副本一样允许一定的陈旧时长，超过时不再回答未注册；本客户端已提交的写入所在区块应用之前同样不回答，
+ * 保证本客户端写入后能读到。
+ * 过滤器不落盘，每次启动都从0号区块扫描账本，扫描完成之前所有读取都经过peer查询；
+ * 账本很大时应启用副本（HashReplica），它从快照启动，启用时QueryHash优先使用副本。
+ */
+public class HashFilter {
+
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private static final Counter lookups = Metrics.counter("fabric_client_hash_filter_lookups_total",
+            "Identifier lookups answered by the Bloom filter, by result", "result");
+    private static final Counter.Child negatives = lookups.labels("negative");
+    private static final Counter.Child positives = lookups.labels("positive");
+    private static final Counter.Child falsePositives = Metrics.counter("fabric_client_hash_filter_false_positives_total",
+            "Identifiers the Bloom filter let through that the peers reported as not registered").labels();
+    private static final Gauge.Child estimatedRate = Metrics.gauge("fabric_client_hash_filter_false_positive_rate",
+            "Estimated false positive rate of the Bloom filter from its fill ratio").labels();
+    private static final Gauge.Child identifiers = Metrics.gauge("fabric_client_hash_filter_identifiers",
+            "Identifiers added to the Bloom filter").labels();
+
+    private final int initialCapacity;
+    private final double falsePositiveRate;
+    private final BlockFollower follower;
+
+    // 各级过滤器，整体替换，仅由follower线程修改
+    private volatile Stage[] stages;
+    private long count;
+
+    public HashFilter(){
+        this(Config.HASH_FILTER_CAPACITY, Config.HASH_FILTER_FALSE_POSITIVE_RATE, Config.HASH_REPLICA_MAX_STALENESS);
+    }
+
+    public HashFilter(int initialCapacity, double falsePositiveRate, long maxStaleness){
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+        this.stages = new Stage[]{stage(0)};
+        this.follower = new BlockFollower("hash-filter", 0, maxStaleness, Config.HASH_REPLICA_SYNC_INTERVAL,
+                block -> {
+                    BlockWrites.forEach(block, Config.CHAINCODE_2_NAME, (key, value, isDelete) -> {
+                        if (!isDelete)
+                            add(key);
+                    });
+                    estimatedRate.set(getFalsePositiveRate());
+                });
+    }
+
+    // 第level级的设计容量与误判率
+    private Stage stage(int level){
+        long capacity = (long) initialCapacity << level;
+        double rate = falsePositiveRate * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, level);
+        return new Stage((int) Math.min(capacity, Integer.MAX_VALUE), rate);
+    }
+
+    // 注册区块事件，从0号区块开始扫描账本
+    public void start(){
+        follower.start();
+    }
+
+    public void stop(){
+        follower.stop();
+    }
+
+    // 清空过滤器并重新扫描账本
+    public void rebuild(){
+        follower.execute(() -> {
+            stages = new Stage[]{stage(0)};
+            count = 0;
+            identifiers.set(0);
+            follower.reset(0);
+        });
+    }
+
+    // 过滤器是否在允许的陈旧时长内与链保持一致
+    public boolean isFresh(){
+        return follower.isFresh();
+    }
+
+    /**
+     * 标识是否可能已注册。返回false时标识一定没有写入过cc_hash（在过滤器的陈旧时长内），调用前应先检查isFresh
+     */
+    public boolean mightContain(String identifier){
+        long hash = hash(identifier);
+        for (Stage stage : stages) {
+            if (stage.contains(hash)) {
+                positives.inc();
+                return true;
+            }
+        }
+        negatives.inc();
+        return false;
+    }
+
+    // 记录一次误判：过滤器放行的标识在peer上未注册
+    public void falsePositive(){
+        falsePositives.inc();
+    }
+
+    private void add(String identifier){
+        long hash = hash(identifier);
+        Stage[] current = stages;
+        for (Stage stage : current) {
+            if (stage.contains(hash))
+                return;
+        }
+        Stage last = current[current.length - 1];
+        if (last.count >= last.capacity) {
+            Stage[] grown = new Stage[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            last = grown[current.length] = stage(current.length);
+            stages = grown;
+        }
+        last.add(hash);
+        identifiers.set(++count);
+    }
+
+    // 按各级的置位比例估算的误判率
+    public double getFalsePositiveRate(){
+        double none = 1;
+        for (Stage stage : stages)
+            none *= 1 - Math.pow((double) stage.setBits / stage.bits, stage.hashes);
+        return 1 - none;
+    }
+
+    // 已加入的标识数
+    public long size(){
+        return count;
+    }
+
+    // 已应用的区块数
+    public long getHeight(){
+        return follower.getHeight();
+    }
+
+    // 标识UTF-8字节的64位hash（FNV-1a后做MurmurHash3的fmix64混合）
+    static long hash(String identifier){
+        long h = 0xcbf29ce484222325L;
+        for (byte b : identifier.getBytes(UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // 一级布隆过滤器，由64位hash的高低两半做双重hash得到各个位置，位图仅由follower线程写入
+    private static class Stage {
+        final int capacity;
+        final long bits;
+        final int hashes;
+        final AtomicLongArray words;
+        int count;
+        long setBits;
+
+        Stage(int capacity, double falsePositiveRate){
+            this.capacity = capacity;
+            double ln2 = Math.log(2);
+            long size = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            this.bits = Math.max(64, (size + 63) / 64 * 64);
+            this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * ln2));
+            this.words = new AtomicLongArray((int) (bits / 64));
+        }
+
+        boolean contains(long hash){
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+                if ((words.get((int) (index >>> 6)) & (1L << index)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        void add(long hash){
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+                int word = (int) (index >>> 6);
+                long value = words.get(word);
+                if ((value & (1L << index)) == 0) {
+                    words.set(word, value | (1L << index));
+                    setBits++;
+                }
+            }
+            count++;
+        }
+    }
+}
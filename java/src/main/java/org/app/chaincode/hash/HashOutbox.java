@@ -0,0 +1,450 @@
+package org.app.chaincode.hash;
+
+import net.sf.json.JSONObject;
+import org.app.config.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 该类负责在本地持久化待写入区块链的映射数据hash（写前日志），由dht控制组件调用。
+ * 写入先追加到内存映射的日志分段并由刷盘线程合并fsync，落盘后即视为已接受，再经HashBatcher异步提交上链；
+ * 交易提交后在当前分段追加确认记录。确认记录可能位于比所确认写入更新的分段中，因此日志只从头部截断：
+ * 一个分段及其之前的所有分段内的写入全部确认后才删除该分段。进程重启时重放日志中尚未确认的写入，
+ * 同一标识只重放最新的一笔，避免旧值覆盖新值。
+ * 提交失败的写入定时重试；被链码拒绝或达到提交次数上限的写入追加到parked.log并确认，不再阻止分段删除。
+ *
+ * 记录格式：长度(int) + CRC32(int) + 记录体，记录体为 类型(byte) + 序号(long) [+ 标识 + 映射数据hash]，
+ * 长度为0表示分段的已写入部分到此结束，CRC不符的记录视为崩溃时未写完的尾部
+ */
+public class HashOutbox {
+
+    private static final byte PUT = 1;
+    private static final byte ACK = 2;
+    private static final int HEADER_SIZE = 8;
+
+    private final File directory;
+    private final int segmentSize;
+    private final HashBatcher batcher;
+    private final FileLock lock;
+
+    // 以下状态由this保护
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private long nextSeq = 1;
+    // 尚未确认的写入，按序号索引
+    private final Map<Long, Entry> unacked = new HashMap<>();
+    // 有未确认写入的标识：最新一笔写入的序号和未确认的写入数
+    private final Map<String, long[]> latest = new HashMap<>();
+    // 等待刷盘的写入
+    private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    private boolean closed;
+    // 本次运行中移入parked.log的写入数
+    private int parked;
+
+    // 提交失败、等待重新提交的写入
+    private final ConcurrentLinkedQueue<Entry> failed = new ConcurrentLinkedQueue<>();
+    private final Thread flusher;
+    private final ExecutorService submitter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "hash-outbox-submit");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "hash-outbox-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public HashOutbox(InvokeHash invokeHash) throws IOException {
+        this(new HashBatcher(invokeHash), new File(Config.HASH_OUTBOX_DIR), Config.HASH_OUTBOX_SEGMENT_SIZE);
+    }
+
+    public HashOutbox(HashBatcher batcher, File directory, int segmentSize) throws IOException {
+        this.batcher = batcher;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("无法创建写入日志目录 " + directory);
+        // 同一目录只允许一个进程使用，锁随进程退出释放
+        this.lock = new RandomAccessFile(new File(directory, "lock"), "rw").getChannel().tryLock();
+        if (lock == null)
+            throw new IOException("写入日志目录 " + directory + " 正被其他进程使用");
+
+        List<Entry> replay = recover();
+        flusher = new Thread(this::flushLoop, "hash-outbox-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+        retryTimer.scheduleWithFixedDelay(this::retryFailed, Config.HASH_OUTBOX_RETRY_DELAY,
+                Config.HASH_OUTBOX_RETRY_DELAY, TimeUnit.MILLISECONDS);
+        if (!replay.isEmpty()) {
+            System.out.println("【系统提示】- 重放写入日志中尚未提交的 " + replay.size() + " 个映射数据hash");
+            for (Entry entry : replay)
+                submit(entry);
+        }
+    }
+
+    // 写入映射数据hash：写入落盘后返回，上链异步进行
+    public void invoke(JSONObject dataJson){
+        try {
+            append(dataJson.getString("identifier"), dataJson.getString("mappingData_hash")).join();
+        } catch (Exception e) {
+            System.out.println("写入失败！");
+            e.printStackTrace();
+        }
+    }
+
+    // 追加一笔待写入的映射数据hash，返回的future在该记录刷盘后完成
+    public CompletableFuture<Void> append(String identifier, String mappingDataHash){
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        Entry entry;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("写入日志已关闭");
+            entry = new Entry(nextSeq++, identifier, mappingDataHash);
+            try {
+                write(PUT, entry);
+            } catch (IOException e) {
+                durable.completeExceptionally(e);
+                return durable;
+            }
+            unacked.put(entry.seq, entry);
+            track(entry);
+            waiters.add(durable);
+            notifyAll();
+        }
+        // 提交可能因写入窗口已满而阻塞，不能占用刷盘线程
+        durable.thenRunAsync(() -> submit(entry), submitter);
+        return durable;
+    }
+
+    // 尚未确认上链的写入数
+    public synchronized int pending(){
+        return unacked.size();
+    }
+
+    // 本次运行中因被链码拒绝或多次提交失败而移入parked.log的写入数
+    public synchronized int parked(){
+        return parked;
+    }
+
+    // 刷盘并停止后台线程，未确认的写入留待下次启动重放
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        retryTimer.shutdownNow();
+        submitter.shutdown();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Segment segment : segments.values())
+                segment.buffer.force();
+        }
+        lock.release();
+        lock.channel().close();
+    }
+
+    // 刷盘线程：每轮把期间到达的所有写入合并为一次fsync
+    private void flushLoop(){
+        while (true) {
+            List<CompletableFuture<Void>> batch;
+            Segment segment;
+            synchronized (this) {
+                while (waiters.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (waiters.isEmpty())
+                    return;
+                batch = waiters;
+                waiters = new ArrayList<>();
+                segment = active;
+            }
+            // 写满的旧分段在切换时已经刷盘，这里只需刷当前分段
+            segment.buffer.force();
+            for (CompletableFuture<Void> waiter : batch)
+                waiter.complete(null);
+        }
+    }
+
+    private void submit(Entry entry){
+        if (superseded(entry)) {
+            acknowledge(entry);
+            return;
+        }
+        entry.attempts++;
+        batcher.add(entry.identifier, entry.mappingDataHash).whenComplete((event, e) -> {
+            if (e == null) {
+                acknowledge(entry);
+            } else if (HashBatcher.rejected(e) || entry.attempts >= Config.HASH_OUTBOX_MAX_ATTEMPTS) {
+                park(entry, e);
+            } else {
+                Logger.getLogger(HashOutbox.class.getName()).log(Level.WARNING,
+                        "标识 " + entry.identifier + " 的映射数据hash第 " + entry.attempts + " 次提交失败，稍后重试", e);
+                failed.add(entry);
+            }
+        });
+    }
+
+    // 不再重试的写入落盘到parked.log后确认，由运维人员处理
+    private synchronized void park(Entry entry, Throwable e){
+        Logger.getLogger(HashOutbox.class.getName()).log(Level.SEVERE, "标识 " + entry.identifier
+                + " 的映射数据hash提交 " + entry.attempts + " 次未成功，移入parked.log", e);
+        Throwable cause = e;
+        while (cause.getCause() != null)
+            cause = cause.getCause();
+        String line = entry.seq + "\t" + entry.identifier + "\t" + entry.mappingDataHash + "\t"
+                + String.valueOf(cause.getMessage()).replaceAll("\\s+", " ") + "\n";
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "parked.log"), true)) {
+            out.write(line.getBytes(UTF_8));
+            out.getFD().sync();
+        } catch (IOException ex) {
+            // 未能记下的写入留在日志中，下次启动时重放
+            Logger.getLogger(HashOutbox.class.getName()).log(Level.WARNING, "写入parked.log失败", ex);
+            return;
+        }
+        parked++;
+        acknowledge(entry);
+    }
+
+    private void retryFailed(){
+        for (Entry entry; (entry = failed.poll()) != null; )
+            submit(entry);
+    }
+
+    // 同一标识已有更新的写入时，旧的写入不再提交
+    private synchronized boolean superseded(Entry entry){
+        long[] state = latest.get(entry.identifier);
+        return state != null && state[0] > entry.seq;
+    }
+
+    private void track(Entry entry){
+        long[] state = latest.computeIfAbsent(entry.identifier, k -> new long[2]);
+        state[0] = Math.max(state[0], entry.seq);
+        state[1]++;
+    }
+
+    // 确认一笔写入已上链，确认记录不单独刷盘：丢失确认只会导致重启后多重放一次
+    private synchronized void acknowledge(Entry entry){
+        if (unacked.remove(entry.seq) == null)
+            return;
+        long[] state = latest.get(entry.identifier);
+        if (state != null && --state[1] == 0)
+            latest.remove(entry.identifier);
+        try {
+            write(ACK, new Entry(entry.seq, null, null));
+        } catch (IOException e) {
+            Logger.getLogger(HashOutbox.class.getName()).log(Level.WARNING, "写入确认记录失败", e);
+        }
+        Segment segment = segments.get(entry.segment);
+        if (segment != null && --segment.unacked == 0)
+            truncate();
+    }
+
+    private void write(byte type, Entry entry) throws IOException {
+        byte[] identifier = entry.identifier == null ? null : entry.identifier.getBytes(UTF_8);
+        byte[] hash = entry.mappingDataHash == null ? null : entry.mappingDataHash.getBytes(UTF_8);
+        int bodySize = 1 + 8 + (type == PUT ? 8 + identifier.length + hash.length : 0);
+        if (HEADER_SIZE + bodySize + 4 > segmentSize)
+            throw new IOException("映射数据hash过大，超出写入日志分段大小");
+        if (active == null || active.buffer.remaining() < HEADER_SIZE + bodySize + 4)
+            roll();
+
+        MappedByteBuffer buffer = active.buffer;
+        int start = buffer.position();
+        buffer.position(start + HEADER_SIZE);
+        buffer.put(type).putLong(entry.seq);
+        if (type == PUT) {
+            buffer.putInt(identifier.length).put(identifier);
+            buffer.putInt(hash.length).put(hash);
+        }
+        CRC32 crc = new CRC32();
+        for (int i = start + HEADER_SIZE; i < start + HEADER_SIZE + bodySize; i++)
+            crc.update(buffer.get(i));
+        // 先写记录体、最后写长度，崩溃时未写完的记录长度为0或CRC不符
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, bodySize);
+        if (type == PUT) {
+            entry.segment = active.id;
+            active.unacked++;
+        }
+    }
+
+    // 切换到新的分段，旧分段刷盘后截断日志头部
+    private void roll() throws IOException {
+        Segment previous = active;
+        long id = previous == null ? (segments.isEmpty() ? 1 : segments.lastKey() + 1) : previous.id + 1;
+        active = Segment.open(new File(directory, String.format("%016d.log", id)), id, segmentSize);
+        segments.put(id, active);
+        if (previous != null) {
+            previous.buffer.force();
+            truncate();
+        }
+    }
+
+    // 从最旧的分段起删除写入已全部确认的分段，遇到仍有未确认写入的分段或当前分段为止；
+    // 被删除分段中的确认记录只可能指向它自己或更旧分段中的写入，这些分段都已删除
+    private void truncate(){
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == active || oldest.unacked > 0)
+                return;
+            segments.remove(oldest.id);
+            if (!oldest.file.delete())
+                Logger.getLogger(HashOutbox.class.getName()).log(Level.WARNING, "无法删除写入日志分段 " + oldest.file);
+        }
+    }
+
+    // 扫描全部分段，恢复未确认的写入，返回需要重新提交的写入
+    private synchronized List<Entry> recover() throws IOException {
+        // 只有roll()按16位分段号命名的文件是分段，同一目录中的parked.log等文件不参与恢复
+        File[] files = directory.listFiles((dir, name) -> name.matches("\\d{16}\\.log"));
+        if (files != null) {
+            for (File file : files) {
+                long id = Long.parseLong(file.getName().substring(0, file.getName().length() - 4));
+                segments.put(id, Segment.open(file, id, segmentSize));
+            }
+        }
+        List<Long> acks = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            MappedByteBuffer buffer = segment.buffer;
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int bodySize = buffer.getInt(start);
+                if (bodySize <= 0 || bodySize > buffer.limit() - start - HEADER_SIZE)
+                    break;
+                CRC32 crc = new CRC32();
+                for (int i = start + HEADER_SIZE; i < start + HEADER_SIZE + bodySize; i++)
+                    crc.update(buffer.get(i));
+                if ((int) crc.getValue() != buffer.getInt(start + 4))
+                    break;
+                buffer.position(start + HEADER_SIZE);
+                byte type = buffer.get();
+                long seq = buffer.getLong();
+                if (type == PUT) {
+                    byte[] identifier = new byte[buffer.getInt()];
+                    buffer.get(identifier);
+                    byte[] hash = new byte[buffer.getInt()];
+                    buffer.get(hash);
+                    Entry entry = new Entry(seq, new String(identifier, UTF_8), new String(hash, UTF_8));
+                    entry.segment = segment.id;
+                    segment.unacked++;
+                    unacked.put(seq, entry);
+                } else {
+                    acks.add(seq);
+                }
+                nextSeq = Math.max(nextSeq, seq + 1);
+                buffer.position(start + HEADER_SIZE + bodySize);
+            }
+        }
+        // 清掉最后一个分段中崩溃时未写完的尾部，之后的追加从这里开始
+        if (!segments.isEmpty())
+            clearTail(segments.lastEntry().getValue().buffer);
+        for (Long seq : acks) {
+            Entry entry = unacked.remove(seq);
+            if (entry != null)
+                segments.get(entry.segment).unacked--;
+        }
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        truncate();
+
+        // 按序号重放，同一标识只保留最新一笔，较旧的写入直接确认
+        List<Entry> replay = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>(unacked.values());
+        entries.sort((a, b) -> Long.compare(a.seq, b.seq));
+        for (Entry entry : entries)
+            track(entry);
+        for (Entry entry : entries) {
+            if (!superseded(entry))
+                replay.add(entry);
+            else
+                acknowledge(entry);
+        }
+        return replay;
+    }
+
+    // 把position之后的非零数据清零，只写入含非零字节的块，避免弄脏整个分段
+    private static void clearTail(MappedByteBuffer buffer){
+        byte[] zeros = new byte[4096];
+        for (int start = buffer.position(); start < buffer.limit(); start += zeros.length) {
+            int end = Math.min(start + zeros.length, buffer.limit());
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) != 0) {
+                    ByteBuffer chunk = buffer.duplicate();
+                    chunk.position(start);
+                    chunk.put(zeros, 0, end - start);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        final long seq;
+        final String identifier;
+        final String mappingDataHash;
+        // 所在分段
+        long segment;
+        // 本次运行中的提交次数
+        int attempts;
+
+        Entry(long seq, String identifier, String mappingDataHash){
+            this.seq = seq;
+            this.identifier = identifier;
+            this.mappingDataHash = mappingDataHash;
+        }
+    }
+
+    private static class Segment {
+        final long id;
+        final File file;
+        final MappedByteBuffer buffer;
+        // 分段内尚未确认的写入数
+        int unacked;
+
+        Segment(long id, File file, MappedByteBuffer buffer){
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment open(File file, long id, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() < size)
+                    raf.setLength(size);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                return new Segment(id, file, buffer);
+            }
+        }
+    }
+}
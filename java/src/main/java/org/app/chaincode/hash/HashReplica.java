@@ -0,0 +1,255 @@
+package org.app.chaincode.hash;
+
+import org.app.chaincode.QueryResultReader;
+import org.app.chaincode.StateSnapshot;
+import org.app.client.BlockFollower;
+import org.app.client.BlockWrites;
+import org.app.config.Config;
+import org.hyperledger.fabric.sdk.BlockInfo;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 该类负责在本地维护cc_hash世界状态（标识到映射数据hash）的副本，供QueryHash在本地读取。
+ * 副本通过BlockFollower按区块号顺序应用区块中有效交易的写集，最近一次确认与链高度一致的时间超过允许的陈旧时长时，
+ * 副本视为落后，读取回退到peer查询。
+ *
+ * 状态由内存映射的快照（StateSnapshot）和快照之后各区块的增量两部分组成：启动时加载快照，只需重放快照之后的区块；
+ * 运行中定期把增量合并写成新快照。加载的快照在第一次同步时与链上对应区块的hash核对，链被重置时从0号区块重建。
+ * 一个区块的全部写入先在本地收集，再在写锁下一次发布到增量中，读取不会看到只应用了一半的区块。
+ */
+public class HashReplica {
+
+    // 增量中表示删除的标记，按引用比较
+    private static final String DELETED = new String("");
+
+    // 快照文件，为null时不写快照
+    private final File snapshotFile;
+    private final BlockFollower follower;
+
+    // 当前的快照与增量，整体替换，仅由follower线程修改
+    private volatile View view;
+    // 发布区块写入时持有写锁，读取先乐观读，与发布重叠时在读锁下重读
+    private final StampedLock lock = new StampedLock();
+    // 已应用的最后一个区块的hash，写入快照供加载时核对
+    private byte[] blockHash = new byte[0];
+    // 加载的快照尚未与链核对
+    private boolean unverified;
+    // 标识数，仅由follower线程修改
+    private volatile int size;
+
+    public HashReplica(){
+        this(null, Config.HASH_REPLICA_MAX_STALENESS);
+    }
+
+    // 从快照文件加载已有状态（文件不存在或无法读取时从0号区块开始），并定期把状态写回该文件
+    public HashReplica(File snapshotFile, long maxStaleness){
+        this.snapshotFile = snapshotFile;
+        StateSnapshot snapshot = snapshotFile == null ? null : load(snapshotFile);
+        this.follower = new BlockFollower("hash-replica", snapshot == null ? 0 : snapshot.getHeight(),
+                maxStaleness, Config.HASH_REPLICA_SYNC_INTERVAL, new BlockFollower.Handler() {
+            @Override
+            public void apply(BlockInfo block) throws Exception {
+                HashReplica.this.apply(block);
+            }
+
+            @Override
+            public void onChainHeight(long chainHeight) throws Exception {
+                if (unverified)
+                    verify(chainHeight);
+            }
+        });
+        reset(snapshot);
+    }
+
+    private static StateSnapshot load(File file){
+        if (!file.isFile())
+            return null;
+        try {
+            return StateSnapshot.load(file);
+        } catch (Exception e) {
+            Logger.getLogger(HashReplica.class.getName()).log(Level.WARNING, "映射数据hash快照 " + file + " 无法加载，从0号区块重建", e);
+            return null;
+        }
+    }
+
+    private void reset(StateSnapshot snapshot){
+        view = new View(snapshot);
+        follower.reset(snapshot == null ? 0 : snapshot.getHeight());
+        blockHash = snapshot == null ? new byte[0] : snapshot.getBlockHash();
+        size = snapshot == null ? 0 : snapshot.size();
+        unverified = snapshot != null;
+    }
+
+    // 注册区块事件并开始定时同步
+    public void start(){
+        follower.start();
+        if (snapshotFile != null)
+            follower.schedule(this::writeSnapshot, Config.HASH_REPLICA_SNAPSHOT_INTERVAL);
+    }
+
+    public void stop(){
+        follower.stop();
+    }
+
+    // 副本是否在允许的陈旧时长内与链保持一致
+    public boolean isFresh(){
+        return follower.isFresh();
+    }
+
+    // 本地读取映射数据hash，标识未注册时返回null；调用前应先检查isFresh
+    public String get(String identifier){
+        long stamp = lock.tryOptimisticRead();
+        String mappingDataHash = view.get(identifier);
+        if (lock.validate(stamp))
+            return mappingDataHash;
+        stamp = lock.readLock();
+        try {
+            return view.get(identifier);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // 已应用的区块数
+    public long getHeight(){
+        return follower.getHeight();
+    }
+
+    public int size(){
+        return size;
+    }
+
+    // 核对加载的快照是否属于当前的链，链高度低于快照或对应区块的hash不一致时丢弃快照
+    private void verify(long chainHeight) throws Exception {
+        long height = follower.getHeight();
+        if (height > 0 && (chainHeight < height
+                || !Arrays.equals(follower.channel().queryBlockByNumber(height - 1).getDataHash(), blockHash))) {
+            Logger.getLogger(HashReplica.class.getName()).warning("映射数据hash快照与链不一致，从0号区块重建");
+            reset(null);
+        }
+        unverified = false;
+    }
+
+    private void apply(BlockInfo block) throws Exception {
+        View current = view;
+        // 本区块对各标识的最终写入，删除记为null
+        Map<String, String> writes = new HashMap<>();
+        BlockWrites.forEach(block, Config.CHAINCODE_2_NAME, (key, value, isDelete) ->
+                writes.put(key, isDelete ? null : mappingDataHash(value)));
+        if (!writes.isEmpty()) {
+            long stamp = lock.writeLock();
+            try {
+                for (Map.Entry<String, String> write : writes.entrySet()) {
+                    String key = write.getKey();
+                    String mappingDataHash = write.getValue();
+                    String previous = current.get(key);
+                    if (mappingDataHash != null)
+                        current.changes.put(key, mappingDataHash);
+                    else if (current.snapshot != null && current.snapshot.get(key) != null)
+                        current.changes.put(key, DELETED);
+                    else
+                        current.changes.remove(key);
+                    if (previous == null && mappingDataHash != null)
+                        size++;
+                    else if (previous != null && mappingDataHash == null)
+                        size--;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        blockHash = block.getDataHash();
+    }
+
+    // 把快照与增量合并写成新快照，然后切换到新快照
+    private void writeSnapshot(){
+        View current = view;
+        long height = follower.getHeight();
+        if (unverified || current.changes.isEmpty() && current.snapshot != null && current.snapshot.getHeight() == height)
+            return;
+        try {
+            long start = System.currentTimeMillis();
+            StateSnapshot.write(snapshotFile, height, blockHash, current.merge());
+            view = new View(StateSnapshot.load(snapshotFile));
+            Logger.getLogger(HashReplica.class.getName()).fine("映射数据hash快照已写入，区块高度 " + height + "，标识数 " + size
+                    + "，耗时 " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            Logger.getLogger(HashReplica.class.getName()).log(Level.WARNING, "写入映射数据hash快照失败", e);
+        }
+    }
+
+    // 取出cc_hash记录 {"docType":"identity","identifier":..,"mappingData_hash":..} 中的映射数据hash
+    static String mappingDataHash(byte[] value){
+        String[] result = new String[1];
+        QueryResultReader.forEachEntry(value, (name, fieldValue) -> {
+            if (name.equals("mappingData_hash"))
+                result[0] = fieldValue;
+        });
+        return result[0];
+    }
+
+    // 快照与其后的增量，读取时先查增量再查快照
+    private static class View {
+        final StateSnapshot snapshot;
+        final Map<String, String> changes = new ConcurrentHashMap<>();
+
+        View(StateSnapshot snapshot){
+            this.snapshot = snapshot;
+        }
+
+        String get(String identifier){
+            String value = changes.get(identifier);
+            if (value == null)
+                return snapshot == null ? null : snapshot.get(identifier);
+            return value == DELETED ? null : value;
+        }
+
+        // 按键的顺序合并快照与增量，略去已删除的标识
+        List<Map.Entry<String, String>> merge(){
+            List<byte[]> keys = new ArrayList<>(changes.size());
+            for (String key : changes.keySet())
+                keys.add(key.getBytes(UTF_8));
+            keys.sort(StateSnapshot.KEY_ORDER);
+            List<Map.Entry<String, String>> merged = new ArrayList<>((snapshot == null ? 0 : snapshot.size()) + keys.size());
+            Iterator<Map.Entry<String, String>> base = snapshot == null
+                    ? Collections.emptyIterator() : snapshot.entries().iterator();
+            Map.Entry<String, String> next = base.hasNext() ? base.next() : null;
+            byte[] nextKey = next == null ? null : next.getKey().getBytes(UTF_8);
+            for (byte[] key : keys) {
+                while (next != null && StateSnapshot.KEY_ORDER.compare(nextKey, key) < 0) {
+                    merged.add(next);
+                    next = base.hasNext() ? base.next() : null;
+                    nextKey = next == null ? null : next.getKey().getBytes(UTF_8);
+                }
+                if (next != null && StateSnapshot.KEY_ORDER.compare(nextKey, key) == 0) {
+                    next = base.hasNext() ? base.next() : null;
+                    nextKey = next == null ? null : next.getKey().getBytes(UTF_8);
+                }
+                String identifier = new String(key, UTF_8);
+                String value = changes.get(identifier);
+                if (value != DELETED)
+                    merged.add(new AbstractMap.SimpleImmutableEntry<>(identifier, value));
+            }
+            while (next != null) {
+                merged.add(next);
+                next = base.hasNext() ? base.next() : null;
+            }
+            return merged;
+        }
+    }
+}
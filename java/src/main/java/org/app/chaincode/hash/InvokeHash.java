@@ -2,17 +2,21 @@ package org.app.chaincode.hash;
 
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
-import org.app.client.CAClient;
+import org.app.client.AdaptiveLimiter;
 import org.app.client.ChannelClient;
-import org.app.client.FabricClient;
+import org.app.client.FabricGateway;
 import org.app.config.Config;
-import org.app.user.UserContext;
-import org.app.util.Util;
 import org.hyperledger.fabric.sdk.*;
+import org.hyperledger.fabric.sdk.BlockEvent.TransactionEvent;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.TransactionEventException;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,72 +29,113 @@ public class InvokeHash {
     private static final byte[] EXPECTED_EVENT_DATA = "!".getBytes(UTF_8);
     private static final String EXPECTED_EVENT_NAME = "event";
 
-    private static FabricClient fabClient_invoke;
-    private static ChannelClient channelClient_invoke;
+    // 异步写入的背书线程，线程数受写入窗口限制
+    private static final ExecutorService proposalExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "invoke-hash-proposal");
+        t.setDaemon(true);
+        return t;
+    });
     // 操作类型（写入/删除/更新）
     private String type;
+    // 异步写入窗口，按写入延迟和失败自适应调整大小，窗口已满时阻塞调用方
+    private AdaptiveLimiter limiter;
 
     // 初始化配置信息
     public InvokeHash(String type){
-        try {
-            Util.cleanUp();
-            String caUrl = Config.CA_ORG1_URL;
-            CAClient caClient = new CAClient(caUrl, null);
-            // Enroll Admin to Org1MSP
-            UserContext adminUserContext = new UserContext();
-            adminUserContext.setName(Config.ADMIN);
-            adminUserContext.setAffiliation(Config.ORG1);
-            adminUserContext.setMspId(Config.ORG1_MSP);
-            caClient.setAdminUserContext(adminUserContext);
-            adminUserContext = caClient.enrollAdminUser(Config.ADMIN, Config.ADMIN_PASSWORD);
-
-            fabClient_invoke = new FabricClient(adminUserContext);
-
-            channelClient_invoke = fabClient_invoke.createChannelClient(Config.CHANNEL_NAME);
-            Channel channel = channelClient_invoke.getChannel();
-            Orderer orderer = fabClient_invoke.getInstance().newOrderer(Config.ORDERER_NAME, Config.ORDERER_URL);
-            Peer peer = fabClient_invoke.getInstance().newPeer("peer0.org1.example.com", "grpc://localhost:7051");
-            channel.addOrderer(orderer);
-            channel.addPeer(peer);
-            channel.initialize();
-            this.type = type;
-            System.out.println("【系统提示】- 准备"+type+"映射数据hash");
+        this(type, FabricGateway.getInstance().getWriteLimiter());
+    }
 
-        } catch (Exception e) {
-            System.out.println("配置信息初始化失败！");
-            e.printStackTrace();
-        }
+    // 初始化配置信息，limiter限制同时处于背书/排序/提交阶段的异步写入数
+    public InvokeHash(String type, AdaptiveLimiter limiter){
+        this.type = type;
+        this.limiter = limiter;
+        System.out.println("【系统提示】- 准备"+type+"映射数据hash");
     }
 
-    // 写入/删除/更新 映射数据hash
+    // 写入/删除/更新 映射数据hash，交易发往排序节点后返回；与异步写入共用写入窗口，窗口已满时阻塞
     public void invoke(JSONObject dataJson){
         try {
-            TransactionProposalRequest request = fabClient_invoke.getInstance().newTransactionProposalRequest();
-            ChaincodeID ccid = ChaincodeID.newBuilder().setName(Config.CHAINCODE_2_NAME).build();
-            request.setChaincodeID(ccid);
-            request.setFcn("invokeMappingDataHash");
             String[] arguments = new String[2];
             arguments[0] = dataJson.getString("identifier");
             arguments[1] = dataJson.getString("mappingData_hash");
-            request.setArgs(arguments);
-            request.setProposalWaitTime(1000);
-
-            Map<String, byte[]> tm2 = new HashMap<>();
-            tm2.put("HyperLedgerFabric", "TransactionProposalRequest:JavaSDK".getBytes(UTF_8));
-            tm2.put("method", "TransactionProposalRequest".getBytes(UTF_8));
-            tm2.put("result", ":)".getBytes(UTF_8));
-            tm2.put(EXPECTED_EVENT_NAME, EXPECTED_EVENT_DATA);
-            request.setTransientMap(tm2);
-            Collection<ProposalResponse> responses = channelClient_invoke.sendTransactionProposal(request);
-            for (ProposalResponse res: responses) {
-                ChaincodeResponse.Status status = res.getStatus();
-                System.out.println(type+"标识 " + arguments[0] + " 的映射数据hash - " + status);
+            AdaptiveLimiter.Permit permit = limiter.acquire();
+            CompletableFuture<TransactionEvent> committed;
+            try {
+                // 网关在每次写入时获取，启动失败的网关会被替换
+                ChannelClient channelClient = FabricGateway.getInstance().getSubmissionEngine().stripe(arguments[0]);
+                committed = channelClient
+                        .sendTransactionAsync(() -> newInvokeRequest(channelClient, "invokeMappingDataHash", arguments));
+            } catch (Exception e) {
+                permit.complete(e);
+                throw e;
             }
+            // 交易提交或失败后归还写入窗口
+            committed.whenComplete((event, e) -> permit.complete(e));
+            // 背书失败时抛出异常
+            if (committed.isCompletedExceptionally())
+                committed.join();
+            System.out.println(type+"标识 " + arguments[0] + " 的映射数据hash - " + ChaincodeResponse.Status.SUCCESS);
         } catch (Exception e) {
             System.out.println(type+"失败！");
             e.printStackTrace();
         }
     }
+
+    // 异步写入/删除/更新 映射数据hash，返回的future在交易提交后完成；写入窗口已满时阻塞
+    public CompletableFuture<TransactionEvent> invokeAsync(JSONObject dataJson) throws InterruptedException {
+        String[] arguments = new String[2];
+        arguments[0] = dataJson.getString("identifier");
+        arguments[1] = dataJson.getString("mappingData_hash");
+        return submitAsync("invokeMappingDataHash", arguments);
+    }
+
+    // 在写入窗口内异步提交一笔cc_hash交易，按首个参数（标识）选择提交条带
+    CompletableFuture<TransactionEvent> submitAsync(String fcn, String[] arguments) throws InterruptedException {
+        AdaptiveLimiter.Permit permit = limiter.acquire();
+        CompletableFuture<TransactionEvent> result = new CompletableFuture<>();
+        // 未通过验证（如读写冲突）或被链码拒绝与负载无关，背书失败、超时等缩小窗口
+        result.whenComplete((event, e) -> permit.complete(e));
+        try {
+            proposalExecutor.execute(() -> {
+                try {
+                    // 提交超时由ChannelClient的CommitTracker处理
+                    ChannelClient channelClient = FabricGateway.getInstance().getSubmissionEngine().stripe(arguments[0]);
+                    channelClient.sendTransactionAsync(() -> newInvokeRequest(channelClient, fcn, arguments)).whenComplete((event, e) -> {
+                        if (e != null)
+                            result.completeExceptionally(e);
+                        else if (event != null && !event.isValid())
+                            result.completeExceptionally(new TransactionEventException("交易 " + event.getTransactionID()
+                                    + " 未通过验证，验证码 " + event.getValidationCode(), event));
+                        else
+                            result.complete(event);
+                    });
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    // 构造cc_hash交易提案
+    private TransactionProposalRequest newInvokeRequest(ChannelClient channelClient, String fcn, String[] arguments) throws InvalidArgumentException {
+        TransactionProposalRequest request = channelClient.getFabClient().getInstance().newTransactionProposalRequest();
+        ChaincodeID ccid = ChaincodeID.newBuilder().setName(Config.CHAINCODE_2_NAME).build();
+        request.setChaincodeID(ccid);
+        request.setFcn(fcn);
+        request.setArgs(arguments);
+        request.setProposalWaitTime(Config.PROPOSAL_WAIT_TIME);
+
+        Map<String, byte[]> tm2 = new HashMap<>();
+        tm2.put("HyperLedgerFabric", "TransactionProposalRequest:JavaSDK".getBytes(UTF_8));
+        tm2.put("method", "TransactionProposalRequest".getBytes(UTF_8));
+        tm2.put("result", ":)".getBytes(UTF_8));
+        tm2.put(EXPECTED_EVENT_NAME, EXPECTED_EVENT_DATA);
+        request.setTransientMap(tm2);
+        return request;
+    }
 //    public static void main(String[] args) throws JSONException {
 //
 //        JSONObject configJson = new JSONObject();
@@ -1,80 +1,166 @@
 package org.app.chaincode.hash;
 
-import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
-import org.app.client.CAClient;
-import org.app.client.ChannelClient;
-import org.app.client.FabricClient;
+import org.app.chaincode.QueryResultReader;
+import org.app.client.FabricGateway;
 import org.app.config.Config;
-import org.app.user.UserContext;
-import org.app.util.Util;
-import org.hyperledger.fabric.sdk.Channel;
-import org.hyperledger.fabric.sdk.Orderer;
-import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.ChaincodeResponse;
 import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * 该类负责从区块链读取映射数据的hash，由dht控制组件调用
  */
 public class QueryHash {
 
-    private static ChannelClient channelClient_query;
+    // 映射数据hash读取缓存，由区块事件失效
+    private static final HashCache cache = new HashCache(Config.HASH_CACHE_SIZE, Config.HASH_CACHE_TTL);
+    // cc_hash世界状态的本地副本，未启用时为null
+    private static final HashReplica replica = Config.HASH_REPLICA_ENABLED
+            ? new HashReplica(new File(Config.HASH_REPLICA_SNAPSHOT), Config.HASH_REPLICA_MAX_STALENESS) : null;
+    // 已注册标识的布隆过滤器，未启用时为null
+    private static final HashFilter filter = Config.HASH_FILTER_ENABLED ? new HashFilter() : null;
 
     // 初始化配置信息
+    // 网关在每次读取时获取，启动失败的网关会被替换，区块事件随之转到新网关
     static {
-        try {
-            Util.cleanUp();
-            String caUrl = Config.CA_ORG1_URL;
-            CAClient caClient = new CAClient(caUrl, null);
-            // Enroll Admin to Org1MSP
-            UserContext adminUserContext = new UserContext();
-            adminUserContext.setName(Config.ADMIN);
-            adminUserContext.setAffiliation(Config.ORG1);
-            adminUserContext.setMspId(Config.ORG1_MSP);
-            caClient.setAdminUserContext(adminUserContext);
-            adminUserContext = caClient.enrollAdminUser(Config.ADMIN, Config.ADMIN_PASSWORD);
-
-            FabricClient fabClient_query = new FabricClient(adminUserContext);
-
-            channelClient_query = fabClient_query.createChannelClient(Config.CHANNEL_NAME);
-            Channel channel = channelClient_query.getChannel();
-
-            Orderer orderer = fabClient_query.getInstance().newOrderer(Config.ORDERER_NAME, Config.ORDERER_URL);
-            Peer peer = fabClient_query.getInstance().newPeer("peer0.org1.example.com", "grpc://localhost:7051");
-            channel.addOrderer(orderer);
-            channel.addPeer(peer);
-            channel.initialize();
-            System.out.println("【系统提示】- 准备读取映射数据hash");
+        FabricGateway.getInstance();
+        FabricGateway.addBlockListener(cache::onBlock);
+        if (replica != null)
+            replica.start();
+        if (filter != null)
+            filter.start();
+        System.out.println("【系统提示】- 准备读取映射数据hash");
+    }
 
+    // 读取映射数据hash
+    public static String query(String identifier){
+        if (replica != null && replica.isFresh()) {
+            String mappingDataHash = replica.get(identifier);
+            return mappingDataHash == null ? "该标识尚未注册！" : mappingDataHash;
+        }
+        boolean filtered = filter != null && filter.isFresh();
+        if (filtered && !filter.mightContain(identifier))
+            return "该标识尚未注册！";
+        String mappingDataHash = cache.get(identifier);
+        if (mappingDataHash != null)
+            return mappingDataHash;
+        long stamp = cache.stamp();
+        try {
+            mappingDataHash = queryByIdentifier(identifier);
         } catch (Exception e) {
-            System.out.println("配置信息初始化失败！");
+            System.out.println("读取数据失败！");
             e.printStackTrace();
+            return null;
         }
+        if (mappingDataHash == null) {
+            if (filtered)
+                filter.falsePositive();
+            return "该标识尚未注册！";
+        }
+        System.out.println("成功读取标识 " + identifier + " 的映射数据hash");
+        cache.put(identifier, mappingDataHash, stamp);
+        return mappingDataHash;
     }
 
-    // 读取映射数据hash
-    public static String query(String identifier){
-        JSONArray jsonArray = null;
+    // 按标识直接读取映射数据hash（链码GetState，不经过CouchDB富查询），标识未注册时返回null
+    public static String queryByIdentifier(String identifier) throws InvalidArgumentException, ProposalException {
+        String mappingDataHash = null;
+        Collection<ProposalResponse> responses1Query = FabricGateway.getInstance().getChannelClient().queryByChainCode(Config.CHAINCODE_2_NAME, "getHashByIdentifier", new String[]{identifier});
+        for (ProposalResponse pres : responses1Query) {
+            if (pres.getStatus() != ChaincodeResponse.Status.SUCCESS)
+                throw new ProposalException("读取标识 " + identifier + " 失败：" + pres.getMessage());
+            byte[] payload = pres.getChaincodeActionResponsePayload();
+            mappingDataHash = payload == null || payload.length == 0 ? null : new String(payload, UTF_8);
+        }
+        return mappingDataHash;
+    }
+
+    // 批量读取映射数据hash，返回已注册标识到映射数据hash的映射；标识过多时按提案大小上限分批读取，
+    // 任一批读取失败时返回null（与query一致），不返回部分结果，以免未读到的标识被当作未注册
+    public static Map<String, String> queryAll(Collection<String> identifiers){
+        Map<String, String> result = new HashMap<>(identifiers.size() * 2);
+        if (replica != null && replica.isFresh()) {
+            for (String identifier : identifiers) {
+                String mappingDataHash = replica.get(identifier);
+                if (mappingDataHash != null)
+                    result.put(identifier, mappingDataHash);
+            }
+            return result;
+        }
+        boolean filtered = filter != null && filter.isFresh();
+        List<String> chunk = new ArrayList<>();
+        int chunkBytes = 0;
+        long stamp = cache.stamp();
         try {
-            Collection<ProposalResponse> responses1Query = channelClient_query.queryByChainCode(Config.CHAINCODE_2_NAME, "queryHashByIdentifier", new String[]{identifier});
-            for (ProposalResponse pres : responses1Query) {
-                String stringResponse = new String(pres.getChaincodeActionResponsePayload());
-                if (stringResponse.length() <= 2)
-                    return "该标识尚未注册！";
-                jsonArray = JSONArray.fromObject(stringResponse);
-                System.out.println("成功读取标识 " + identifier + " 的映射数据hash");
+            for (String identifier : identifiers) {
+                if (filtered && !filter.mightContain(identifier))
+                    continue;
+                String mappingDataHash = cache.get(identifier);
+                if (mappingDataHash != null) {
+                    result.put(identifier, mappingDataHash);
+                    continue;
+                }
+                int identifierBytes = identifier.getBytes(UTF_8).length;
+                if (!chunk.isEmpty() && (chunk.size() >= Config.HASH_QUERY_CHUNK_SIZE
+                        || chunkBytes + identifierBytes > Config.HASH_QUERY_CHUNK_BYTES)) {
+                    queryChunk(chunk, result, stamp);
+                    chunk.clear();
+                    chunkBytes = 0;
+                }
+                chunk.add(identifier);
+                chunkBytes += identifierBytes;
             }
+            if (!chunk.isEmpty())
+                queryChunk(chunk, result, stamp);
+            System.out.println("成功读取 " + identifiers.size() + " 个标识的映射数据hash");
         } catch (Exception e) {
             System.out.println("读取数据失败！");
             e.printStackTrace();
+            return null;
+        }
+        return result;
+    }
+
+    private static void queryChunk(List<String> chunk, Map<String, String> result, long stamp) throws InvalidArgumentException, ProposalException {
+        Collection<ProposalResponse> responses1Query = FabricGateway.getInstance().getChannelClient().queryByChainCode(Config.CHAINCODE_2_NAME, "getHashesByIdentifiers", chunk.toArray(new String[0]));
+        for (ProposalResponse pres : responses1Query) {
+            if (pres.getStatus() != ChaincodeResponse.Status.SUCCESS)
+                throw new ProposalException("批量读取标识失败：" + pres.getMessage());
+            QueryResultReader.forEachEntry(pres.getChaincodeActionResponsePayload(), (identifier, mappingDataHash) -> {
+                result.put(identifier, mappingDataHash);
+                cache.put(identifier, mappingDataHash, stamp);
+            });
         }
-        return jsonArray.getJSONObject(0).getJSONObject("Record").getString("mappingData_hash");
+    }
+
+    // 映射数据hash读取缓存，可获取命中/未命中次数
+    public static HashCache getCache(){
+        return cache;
+    }
+
+    // cc_hash世界状态的本地副本，未启用时返回null
+    public static HashReplica getReplica(){
+        return replica;
+    }
+
+    // 已注册标识的布隆过滤器，未启用时返回null
+    public static HashFilter getFilter(){
+        return filter;
     }
 //    public static void main(String[] args) throws JSONException {
 
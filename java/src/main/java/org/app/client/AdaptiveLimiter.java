@@ -0,0 +1,239 @@
+package org.app.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.app.metrics.Counter;
+import org.app.metrics.Gauge;
+import org.app.metrics.Metrics;
+import org.hyperledger.fabric.sdk.exception.TransactionEventException;
+
+/**
+ * Concurrency limiter that tunes the number of operations allowed in flight
+ * with AIMD. Latencies of successful operations are smoothed into a moving
+ * average, since commit latency spreads over the orderer's batch timeout even
+ * on an idle network, and the lowest average seen over the last one or two
+ * baseline periods stands for the latency without queueing. While the average
+ * stays within the tolerance of that baseline the limit grows by one per
+ * limit's worth of operations; once it rises above, the limit shrinks
+ * multiplicatively, and more sharply when an operation fails or times out.
+ * Operations that were already in flight when the limit was last decreased do
+ * not decrease it again, so a burst of slow completions counts as a single
+ * congestion signal.
+ */
+public class AdaptiveLimiter {
+
+	private static final Gauge LIMIT = Metrics.gauge("fabric_client_concurrency_limit",
+			"Operations currently allowed in flight by an adaptive limiter", "limiter");
+	private static final Gauge IN_FLIGHT = Metrics.gauge("fabric_client_concurrency_in_flight",
+			"Operations currently in flight under an adaptive limiter", "limiter");
+	private static final Counter DECREASES = Metrics.counter("fabric_client_concurrency_limit_decreases_total",
+			"Decreases of an adaptive limit by cause (latency, error)", "limiter", "cause");
+
+	// factor applied to the limit on a slow operation and on a failed one
+	private static final double LATENCY_BACKOFF = 0.9;
+	private static final double ERROR_BACKOFF = 0.5;
+	// weight of a new sample in the moving average of latency
+	private static final double SAMPLE_WEIGHT = 0.1;
+	private static final long BASELINE_PERIOD = TimeUnit.SECONDS.toNanos(30);
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double tolerance;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private double limit;
+	private int inFlight;
+	private long lastDecrease = System.nanoTime();
+	private double latency;
+	private double baseline = Double.MAX_VALUE;
+	private double previousBaseline = Double.MAX_VALUE;
+	private long periodStart = System.nanoTime();
+
+	private final Gauge.Child limitGauge;
+	private final Gauge.Child inFlightGauge;
+	private final Counter.Child latencyDecreases;
+	private final Counter.Child errorDecreases;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name         value of the limiter label of the metrics
+	 * @param initialLimit
+	 * @param minLimit
+	 * @param maxLimit
+	 * @param tolerance    the limit decreases while the average latency exceeds
+	 *                     tolerance times the baseline
+	 */
+	public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance) {
+		if (minLimit < 1 || maxLimit < minLimit)
+			throw new IllegalArgumentException("invalid limits " + minLimit + ".." + maxLimit);
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.limitGauge = LIMIT.labels(name);
+		this.inFlightGauge = IN_FLIGHT.labels(name);
+		this.latencyDecreases = DECREASES.labels(name, "latency");
+		this.errorDecreases = DECREASES.labels(name, "error");
+		limitGauge.set(limit);
+	}
+
+	/**
+	 * Wait until an operation may start. Each permit must be completed exactly
+	 * once with success, dropped or ignore.
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public Permit acquire() throws InterruptedException {
+		lock.lock();
+		try {
+			while (inFlight >= (int) limit)
+				available.await();
+			inFlight++;
+			inFlightGauge.set(inFlight);
+			return new Permit(System.nanoTime(), inFlight);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the number of operations currently allowed in flight.
+	 *
+	 * @return
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void complete(Permit permit, Outcome outcome) {
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			inFlight--;
+			inFlightGauge.set(inFlight);
+			if (outcome == Outcome.SUCCESS)
+				onSample(permit, now - permit.start, now);
+			else if (outcome == Outcome.DROPPED)
+				decrease(permit, ERROR_BACKOFF, errorDecreases, now);
+			limitGauge.set(limit);
+			if (inFlight < (int) limit)
+				available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void onSample(Permit permit, long sample, long now) {
+		latency = latency == 0 ? sample : latency + SAMPLE_WEIGHT * (sample - latency);
+		if (now - periodStart > BASELINE_PERIOD) {
+			previousBaseline = baseline;
+			baseline = Double.MAX_VALUE;
+			periodStart = now;
+		}
+		baseline = Math.min(baseline, latency);
+		if (latency > tolerance * Math.min(baseline, previousBaseline))
+			decrease(permit, LATENCY_BACKOFF, latencyDecreases, now);
+		else if (permit.inFlight * 2 >= limit)
+			// only grow while the limit is actually used
+			limit = Math.min(maxLimit, limit + 1 / limit);
+	}
+
+	private void decrease(Permit permit, double factor, Counter.Child counter, long now) {
+		if (permit.start - lastDecrease < 0)
+			return;
+		limit = Math.max(minLimit, limit * factor);
+		lastDecrease = now;
+		counter.inc();
+	}
+
+	private enum Outcome {
+		SUCCESS, DROPPED, IGNORED
+	}
+
+	/**
+	 * Right to run one operation, remembers when it started.
+	 */
+	public class Permit {
+
+		private final long start;
+		private final int inFlight;
+		private boolean completed;
+
+		private Permit(long start, int inFlight) {
+			this.start = start;
+			this.inFlight = inFlight;
+		}
+
+		/**
+		 * The operation completed, its latency is a sample for the limit.
+		 */
+		public void success() {
+			complete(Outcome.SUCCESS);
+		}
+
+		/**
+		 * The operation failed or timed out because of load, decrease the limit.
+		 */
+		public void dropped() {
+			complete(Outcome.DROPPED);
+		}
+
+		/**
+		 * The operation ended without saying anything about load, such as a
+		 * rejected argument or a conflicting write.
+		 */
+		public void ignore() {
+			complete(Outcome.IGNORED);
+		}
+
+		/**
+		 * Complete the permit of a transaction from its outcome: success without
+		 * a failure, ignore when the transaction was invalidated or rejected by
+		 * the chaincode, dropped for any other failure such as a peer or orderer
+		 * error or a timeout.
+		 *
+		 * @param failure the exception the transaction failed with, or null
+		 */
+		public void complete(Throwable failure) {
+			if (failure == null) {
+				success();
+				return;
+			}
+			for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+				if (cause instanceof TransactionEventException || cause instanceof ChaincodeRejectedException) {
+					ignore();
+					return;
+				}
+			}
+			dropped();
+		}
+
+		private void complete(Outcome outcome) {
+			synchronized (this) {
+				if (completed)
+					return;
+				completed = true;
+			}
+			AdaptiveLimiter.this.complete(this, outcome);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package org.app.client;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.Channel;
+
+/**
+ * Feeds the blocks of the default channel to a handler strictly in block
+ * number order, on a single worker thread. Block events are applied directly;
+ * a gap in the event stream, or a chain height found ahead of the follower by
+ * the periodic sync, is filled with queryBlockByNumber. Local views of the
+ * world state built from committed blocks use it to know how far behind the
+ * chain they are. The gateway is resolved by every sync, but not by isFresh,
+ * which runs on every local read, and the block listener is carried over when
+ * a failed gateway is replaced; the blocks committed in between are fetched by
+ * the next sync.
+ */
+public class BlockFollower {
+
+	/**
+	 * Receives the blocks in order. Both methods run on the follower thread.
+	 */
+	public interface Handler {
+
+		/**
+		 * Apply the block whose number is the current height of the follower.
+		 *
+		 * @param block
+		 * @throws Exception
+		 */
+		void apply(BlockInfo block) throws Exception;
+
+		/**
+		 * Called by every sync with the chain height before the missing blocks
+		 * are fetched, so that a handler can check that its state still belongs to
+		 * the chain and reset the follower otherwise.
+		 *
+		 * @param chainHeight
+		 * @throws Exception
+		 */
+		default void onChainHeight(long chainHeight) throws Exception {
+		}
+	}
+
+	private final String name;
+	private final long maxStaleness;
+	private final long syncInterval;
+	private final Handler handler;
+	private final ScheduledExecutorService worker;
+
+	// number of the next block to apply, only written by the worker thread
+	private volatile long height;
+	// the first sync has run; block events are ignored until then
+	private volatile boolean synced;
+	// last time the follower was confirmed to be at the chain height
+	private volatile long syncedAt;
+	// number of the last block with a transaction of this client, set by start
+	private volatile LongSupplier lastCommitBlock;
+
+	/**
+	 * @param name         name of the worker thread and of the log messages
+	 * @param height       number of the first block to apply
+	 * @param maxStaleness milliseconds after the last confirmation that the
+	 *                     follower is still considered fresh
+	 * @param syncInterval milliseconds between two chain height checks
+	 * @param handler
+	 */
+	public BlockFollower(String name, long height, long maxStaleness, long syncInterval, Handler handler) {
+		this.name = name;
+		this.height = height;
+		this.maxStaleness = maxStaleness;
+		this.syncInterval = syncInterval;
+		this.handler = handler;
+		this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Register the block listener and start the periodic sync.
+	 */
+	public void start() {
+		lastCommitBlock = FabricGateway::getLastCommitBlock;
+		FabricGateway.addBlockListener(event -> worker.execute(() -> onBlock(event)));
+		worker.scheduleWithFixedDelay(this::sync, 0, syncInterval, TimeUnit.MILLISECONDS);
+	}
+
+	public void stop() {
+		worker.shutdownNow();
+	}
+
+	/**
+	 * Run a task periodically on the follower thread, between two blocks.
+	 *
+	 * @param task
+	 * @param period milliseconds
+	 */
+	public void schedule(Runnable task, long period) {
+		worker.scheduleWithFixedDelay(task, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Continue from another block number. The follower is not fresh again until
+	 * it has caught up with the chain. Only call from the follower thread, e.g.
+	 * from the handler or a scheduled task.
+	 *
+	 * @param height number of the next block to apply
+	 */
+	public void reset(long height) {
+		this.height = height;
+		this.syncedAt = 0;
+	}
+
+	/**
+	 * Run a task once on the follower thread, between two blocks.
+	 *
+	 * @param task
+	 */
+	public void execute(Runnable task) {
+		worker.execute(task);
+	}
+
+	/**
+	 * Return whether the follower was at the chain height within the allowed
+	 * staleness and has applied the blocks of all the transactions this client
+	 * has seen committed, so that a local view reads this client's own writes.
+	 *
+	 * @return
+	 */
+	public boolean isFresh() {
+		return System.currentTimeMillis() - syncedAt <= maxStaleness && isPastLocalCommits();
+	}
+
+	private boolean isPastLocalCommits() {
+		LongSupplier lastCommitBlock = this.lastCommitBlock;
+		return lastCommitBlock != null && height > lastCommitBlock.getAsLong();
+	}
+
+	/**
+	 * Return the number of the next block to apply, i.e. the number of blocks
+	 * applied so far.
+	 *
+	 * @return
+	 */
+	public long getHeight() {
+		return height;
+	}
+
+	private void onBlock(BlockEvent event) {
+		long number = event.getBlockNumber();
+		if (!synced || number < height)
+			return;
+		try {
+			// the event stream skipped blocks, fetch them first
+			if (number > height)
+				catchUp(number);
+			apply(event);
+			syncedAt = System.currentTimeMillis();
+		} catch (Exception e) {
+			Logger.getLogger(BlockFollower.class.getName()).log(Level.WARNING,
+					name + " could not apply block " + number, e);
+		}
+	}
+
+	private void sync() {
+		long now = System.currentTimeMillis();
+		try {
+			long chainHeight = channel().queryBlockchainInfo().getHeight();
+			handler.onChainHeight(chainHeight);
+			synced = true;
+			if (chainHeight > height)
+				catchUp(chainHeight);
+			syncedAt = now;
+		} catch (Exception e) {
+			Logger.getLogger(BlockFollower.class.getName()).log(Level.WARNING, name + " could not sync", e);
+		}
+	}
+
+	private void catchUp(long target) throws Exception {
+		Channel channel = channel();
+		while (height < target)
+			apply(channel.queryBlockByNumber(height));
+	}
+
+	private void apply(BlockInfo block) throws Exception {
+		if (block.getBlockNumber() != height)
+			throw new IllegalStateException(
+					name + " expected block " + height + " but got block " + block.getBlockNumber());
+		handler.apply(block);
+		height = block.getBlockNumber() + 1;
+	}
+
+	/**
+	 * Return the channel the blocks are read from.
+	 *
+	 * @return
+	 */
+	public Channel channel() {
+		return FabricGateway.getInstance().getChannelClient().getChannel();
+	}
+}
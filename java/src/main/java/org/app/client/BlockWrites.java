@@ -0,0 +1,53 @@
+package org.app.client;
+
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset.KVWrite;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.BlockInfo.EnvelopeInfo;
+import org.hyperledger.fabric.sdk.BlockInfo.EnvelopeType;
+import org.hyperledger.fabric.sdk.BlockInfo.TransactionEnvelopeInfo;
+import org.hyperledger.fabric.sdk.BlockInfo.TransactionEnvelopeInfo.TransactionActionInfo;
+import org.hyperledger.fabric.sdk.TxReadWriteSetInfo;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Walks the state writes of the valid transactions in a block.
+ */
+public class BlockWrites {
+
+	/**
+	 * Callback for a single key written by a valid transaction.
+	 */
+	public interface WriteHandler {
+		void write(String key, byte[] value, boolean isDelete);
+	}
+
+	/**
+	 * Visit every key written to a chaincode namespace by the valid transactions of a block.
+	 * 
+	 * @param block
+	 * @param namespace chaincode name
+	 * @param handler
+	 * @throws InvalidProtocolBufferException
+	 */
+	public static void forEach(BlockInfo block, String namespace, WriteHandler handler)
+			throws InvalidProtocolBufferException {
+		for (EnvelopeInfo envelope : block.getEnvelopeInfos()) {
+			if (envelope.getType() != EnvelopeType.TRANSACTION_ENVELOPE || !envelope.isValid())
+				continue;
+			for (TransactionActionInfo action : ((TransactionEnvelopeInfo) envelope).getTransactionActionInfos()) {
+				TxReadWriteSetInfo rwsetInfo = action.getTxReadWriteSet();
+				if (rwsetInfo == null)
+					continue;
+				for (TxReadWriteSetInfo.NsRwsetInfo nsRwset : rwsetInfo.getNsRwsetInfos()) {
+					if (!namespace.equals(nsRwset.getNaamespace()))
+						continue;
+					for (KVWrite write : nsRwset.getRwset().getWritesList()) {
+						handler.write(write.getKey(), write.getValue().toByteArray(), write.getIsDelete());
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -12,12 +12,25 @@
  */       
 package org.app.client;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
 import java.util.Properties;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.app.config.Config;
 import org.app.user.UserContext;
 import org.app.util.Util;
 import org.hyperledger.fabric.sdk.Enrollment;
@@ -26,6 +39,9 @@ import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
 import org.hyperledger.fabric.sdk.security.CryptoSuite;
 import org.hyperledger.fabric_ca.sdk.HFCAClient;
 import org.hyperledger.fabric_ca.sdk.RegistrationRequest;
+import org.json.JSONObject;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Wrapper class for HFCAClient.
@@ -36,6 +52,12 @@ import org.hyperledger.fabric_ca.sdk.RegistrationRequest;
 
 public class CAClient {
 
+	private static final ExecutorService issuerCheck = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "ca-issuer-check");
+		t.setDaemon(true);
+		return t;
+	});
+
 	String caUrl;
 	Properties caProperties;
 
@@ -98,6 +120,7 @@ public class CAClient {
 		UserContext userContext = Util.readUserContext(adminContext.getAffiliation(), username);
 		if (userContext != null) {
 //			Logger.getLogger(CAClient.class.getName()).log(Level.WARNING, "CA -" + caUrl + " admin is already enrolled.");
+			checkIssuer(userContext, () -> instance.enroll(username, password));
 			return userContext;
 		}
 		Enrollment adminEnrollment = instance.enroll(username, password);
@@ -139,6 +162,7 @@ public class CAClient {
 		UserContext userContext = Util.readUserContext(adminContext.getAffiliation(), user.getName());
 		if (userContext != null) {
 			Logger.getLogger(CAClient.class.getName()).log(Level.WARNING, "CA -" + caUrl + " User " + user.getName()+" is already enrolled");
+			checkIssuer(userContext, () -> instance.enroll(user.getName(), secret));
 			return userContext;
 		}
 		Enrollment enrollment = instance.enroll(user.getName(), secret);
@@ -148,4 +172,82 @@ public class CAClient {
 		return user;
 	}
 
+	/**
+	 * Check in the background that stored credentials were issued by this CA,
+	 * so that loading them never waits for the CA. Their expiry is already
+	 * checked offline when they are read. If the CA answers that it did not
+	 * sign the certificate, e.g. because the network was recreated with new CA
+	 * keys, enroll again and replace the enrollment of the user context in
+	 * place, which the clients using it pick up with their next transaction.
+	 * 
+	 * @param userContext stored credentials that are already in use
+	 * @param enroll      enrolls the user again
+	 */
+	private void checkIssuer(UserContext userContext, Callable<Enrollment> enroll) {
+		issuerCheck.execute(() -> {
+			if (isIssuedByCa(userContext))
+				return;
+			try {
+				userContext.setEnrollment(enroll.call());
+				Util.writeUserContext(userContext);
+				Logger.getLogger(CAClient.class.getName()).log(Level.INFO,
+						"CA -" + caUrl + " Enrolled " + userContext.getName() + " again");
+			} catch (Exception e) {
+				Logger.getLogger(CAClient.class.getName()).log(Level.WARNING,
+						"CA -" + caUrl + " could not enroll " + userContext.getName() + " again", e);
+			}
+		});
+	}
+
+	/**
+	 * Check that a stored certificate was issued by this CA, e.g. that the
+	 * network was not recreated with new CA keys since it was stored. The CA
+	 * chain is read from the cainfo endpoint; when the CA cannot be reached the
+	 * stored certificate is trusted.
+	 * 
+	 * @param userContext
+	 * @return false if the CA answered and did not sign the certificate
+	 */
+	boolean isIssuedByCa(UserContext userContext) {
+		Certificate[] chain;
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(caUrl + "/api/v1/cainfo").openConnection();
+			connection.setConnectTimeout(Config.CA_INFO_TIMEOUT);
+			connection.setReadTimeout(Config.CA_INFO_TIMEOUT);
+			String body;
+			try (InputStream in = connection.getInputStream(); Scanner scanner = new Scanner(in, "UTF-8")) {
+				body = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+			} finally {
+				connection.disconnect();
+			}
+			byte[] pem = Base64.getDecoder().decode(new JSONObject(body).getJSONObject("result").getString("CAChain"));
+			chain = CertificateFactory.getInstance("X.509").generateCertificates(new ByteArrayInputStream(pem))
+					.toArray(new Certificate[0]);
+		} catch (Exception e) {
+			Logger.getLogger(CAClient.class.getName()).log(Level.WARNING,
+					"CA -" + caUrl + " could not be asked for its certificate (" + e + "), using stored credentials of "
+							+ userContext.getName());
+			return true;
+		}
+		try {
+			X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+					.generateCertificate(new ByteArrayInputStream(userContext.getEnrollment().getCert().getBytes(UTF_8)));
+			for (Certificate ca : chain) {
+				try {
+					certificate.verify(ca.getPublicKey());
+					return true;
+				} catch (Exception e) {
+					// signed by another certificate of the chain, if any
+				}
+			}
+		} catch (Exception e) {
+			Logger.getLogger(CAClient.class.getName()).log(Level.WARNING,
+					"Stored certificate of " + userContext.getName() + " could not be read", e);
+			return false;
+		}
+		Logger.getLogger(CAClient.class.getName()).log(Level.INFO, "CA -" + caUrl + " did not issue the stored certificate of "
+				+ userContext.getName() + ", enrolling again");
+		return false;
+	}
+
 }
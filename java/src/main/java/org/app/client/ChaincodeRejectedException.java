@@ -0,0 +1,18 @@
+package org.app.client;
+
+import org.hyperledger.fabric.sdk.exception.ProposalException;
+
+/**
+ * A peer answered a transaction proposal with an error status, typically the
+ * chaincode rejecting its arguments. Unlike a transport failure or a timeout
+ * the same proposal fails the same way on every peer and on every retry.
+ */
+public class ChaincodeRejectedException extends ProposalException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ChaincodeRejectedException(String message) {
+		super(message);
+	}
+
+}
@@ -19,13 +19,20 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.app.config.Config;
+import org.app.metrics.Counter;
+import org.app.metrics.Histogram;
+import org.app.metrics.Metrics;
 import org.hyperledger.fabric.sdk.BlockEvent.TransactionEvent;
 import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
+import org.hyperledger.fabric.sdk.ChaincodeResponse;
 import org.hyperledger.fabric.sdk.ChaincodeID;
 import org.hyperledger.fabric.sdk.Channel;
 import org.hyperledger.fabric.sdk.InstantiateProposalRequest;
@@ -48,9 +55,27 @@ import org.hyperledger.fabric.sdk.exception.ProposalException;
 
 public class ChannelClient {
 
+	private static final Histogram PHASE = Metrics.histogram("fabric_client_write_phase_seconds",
+			"Time spent in each phase of a transaction, signing is only counted under sign", "phase");
+	private static final Histogram.Child BUILD = PHASE.labels("build");
+	private static final Histogram.Child ENDORSE = PHASE.labels("endorse");
+	private static final Histogram.Child BROADCAST = PHASE.labels("broadcast");
+	private static final Histogram.Child COMMIT = PHASE.labels("commit");
+	private static final Counter TRANSACTIONS = Metrics.counter("fabric_client_transactions_total",
+			"Transactions by chaincode function and outcome (success, failure, timeout)", "chaincode", "function",
+			"outcome");
+	private static final Counter QUERIES = Metrics.counter("fabric_client_queries_total",
+			"Chaincode queries by chaincode function and outcome (success, failure, timeout)", "chaincode",
+			"function", "outcome");
+	// message the SDK gives a proposal response when the peer timed out
+	private static final String SDK_PROPOSAL_TIMEOUT = "failed because of timeout(";
+
 	String name;
 	Channel channel;
 	FabricClient fabClient;
+	QueryRouter queryRouter;
+	EndorsementPlanner endorsementPlanner;
+	CommitTracker commitTracker;
 
 	public String getName() {
 		return name;
@@ -64,6 +89,38 @@ public class ChannelClient {
 		return fabClient;
 	}
 
+	public QueryRouter getQueryRouter() {
+		return queryRouter;
+	}
+
+	/**
+	 * Take commit events from a tracker shared by the whole channel instead of
+	 * the future returned by the SDK for each transaction.
+	 * 
+	 * @param commitTracker
+	 */
+	public void setCommitTracker(CommitTracker commitTracker) {
+		this.commitTracker = commitTracker;
+	}
+
+	public CommitTracker getCommitTracker() {
+		return commitTracker;
+	}
+
+	/**
+	 * Endorse transaction proposals on the peers picked by the planner instead
+	 * of all the peers of the channel.
+	 * 
+	 * @param endorsementPlanner
+	 */
+	public void setEndorsementPlanner(EndorsementPlanner endorsementPlanner) {
+		this.endorsementPlanner = endorsementPlanner;
+	}
+
+	public EndorsementPlanner getEndorsementPlanner() {
+		return endorsementPlanner;
+	}
+
 	/**
 	 * Constructor
 	 * 
@@ -75,10 +132,11 @@ public class ChannelClient {
 		this.name = name;
 		this.channel = channel;
 		this.fabClient = fabClient;
+		this.queryRouter = new QueryRouter(channel, QueryRouter.Strategy.valueOf(Config.QUERY_ROUTING_STRATEGY));
 	}
 
 	/**
-	 * Query by chaincode.
+	 * Query by chaincode on a single peer picked by the query router.
 	 * 
 	 * @param chaincodeName
 	 * @param functionName
@@ -91,14 +149,22 @@ public class ChannelClient {
 			throws InvalidArgumentException, ProposalException {
 //		Logger.getLogger(ChannelClient.class.getName()).log(Level.INFO,
 //				"Querying " + functionName + " on channel " + channel.getName());
-		QueryByChaincodeRequest request = fabClient.getInstance().newQueryProposalRequest();
-		ChaincodeID ccid = ChaincodeID.newBuilder().setName(chaincodeName).build();
-		request.setChaincodeID(ccid);
-		request.setFcn(functionName);
-		if (args != null)
-			request.setArgs(args);
-
-		Collection<ProposalResponse> response = channel.queryByChaincode(request);
+		Collection<ProposalResponse> response;
+		try {
+			response = queryRouter.query(() -> {
+				QueryByChaincodeRequest request = fabClient.getInstance().newQueryProposalRequest();
+				ChaincodeID ccid = ChaincodeID.newBuilder().setName(chaincodeName).build();
+				request.setChaincodeID(ccid);
+				request.setFcn(functionName);
+				if (args != null)
+					request.setArgs(args);
+				return request;
+			});
+		} catch (InvalidArgumentException | ProposalException | RuntimeException e) {
+			QUERIES.labels(chaincodeName, functionName, outcome(e)).inc();
+			throw e;
+		}
+		QUERIES.labels(chaincodeName, functionName, outcome(response)).inc();
 
 		return response;
 	}
@@ -113,10 +179,30 @@ public class ChannelClient {
 	 */
 	public Collection<ProposalResponse> sendTransactionProposal(TransactionProposalRequest request)
 			throws ProposalException, InvalidArgumentException {
+		return sendTransactionProposal(() -> request, 1);
+	}
+
+	/**
+	 * Send transaction proposal, retrying on a different set of endorsing peers
+	 * when an endorsement fails.
+	 * 
+	 * @param proposalFactory
+	 * @return
+	 * @throws ProposalException
+	 * @throws InvalidArgumentException
+	 */
+	public Collection<ProposalResponse> sendTransactionProposal(EndorsementPlanner.ProposalFactory proposalFactory)
+			throws ProposalException, InvalidArgumentException {
+		return sendTransactionProposal(proposalFactory, Config.ENDORSEMENT_ATTEMPTS);
+	}
+
+	private Collection<ProposalResponse> sendTransactionProposal(EndorsementPlanner.ProposalFactory proposalFactory,
+			int attempts) throws ProposalException, InvalidArgumentException {
 //		Logger.getLogger(ChannelClient.class.getName()).log(Level.INFO,
 //				"Sending transaction proposal on channel " + channel.getName());
 
-		Collection<ProposalResponse> response = channel.sendTransactionProposal(request, channel.getPeers());
+		Endorsement endorsement = endorse(proposalFactory, attempts);
+		Collection<ProposalResponse> response = endorsement.responses;
 		for (ProposalResponse pres : response) {
 			String stringResponse = new String(pres.getChaincodeActionResponsePayload());
 //			Logger.getLogger(ChannelClient.class.getName()).log(Level.INFO,
@@ -125,12 +211,218 @@ public class ChannelClient {
 //			Logger.getLogger(ChannelClient.class.getName()).log(Level.INFO,stringResponse);
 		}
 
-		CompletableFuture<TransactionEvent> cf = channel.sendTransaction(response);
+		CompletableFuture<TransactionEvent> cf = submit(endorsement);
 //		Logger.getLogger(ChannelClient.class.getName()).log(Level.INFO,cf.toString());
 
 		return response;
 	}
 
+	/**
+	 * Send transaction proposal and submit the endorsed transaction to the orderer
+	 * without waiting for it to be committed.
+	 *
+	 * @param request
+	 * @return future completed with the commit event of the transaction
+	 * @throws ProposalException
+	 * @throws InvalidArgumentException
+	 */
+	public CompletableFuture<TransactionEvent> sendTransactionAsync(TransactionProposalRequest request)
+			throws ProposalException, InvalidArgumentException {
+		return sendTransactionAsync(() -> request, 1);
+	}
+
+	/**
+	 * Send transaction proposal, retrying on a different set of endorsing peers
+	 * when an endorsement fails, and submit the endorsed transaction to the
+	 * orderer without waiting for it to be committed.
+	 *
+	 * @param proposalFactory
+	 * @return future completed with the commit event of the transaction
+	 * @throws ProposalException
+	 * @throws InvalidArgumentException
+	 */
+	public CompletableFuture<TransactionEvent> sendTransactionAsync(EndorsementPlanner.ProposalFactory proposalFactory)
+			throws ProposalException, InvalidArgumentException {
+		return sendTransactionAsync(proposalFactory, Config.ENDORSEMENT_ATTEMPTS);
+	}
+
+	private CompletableFuture<TransactionEvent> sendTransactionAsync(EndorsementPlanner.ProposalFactory proposalFactory,
+			int attempts) throws ProposalException, InvalidArgumentException {
+		Endorsement endorsement = endorse(proposalFactory, attempts);
+		for (ProposalResponse pres : endorsement.responses) {
+			if (pres.getStatus() != ChaincodeResponse.Status.SUCCESS) {
+				endorsement.count(outcome(endorsement.responses));
+				String message = "Transaction proposal " + pres.getTransactionID() + " failed on peer "
+						+ pres.getPeer().getName() + ": " + pres.getMessage();
+				CompletableFuture<TransactionEvent> failed = new CompletableFuture<>();
+				failed.completeExceptionally(isRejection(pres) ? new ChaincodeRejectedException(message)
+						: new ProposalException(message));
+				return failed;
+			}
+		}
+		return submit(endorsement);
+	}
+
+	/**
+	 * Send the endorsed transaction to the orderer and count its outcome once
+	 * it commits. The commit event comes from the commit tracker when one is
+	 * set; a broadcast failure reported by the SDK still fails the returned
+	 * future. Completing the returned future with a TimeoutException counts the
+	 * transaction as timed out.
+	 */
+	private CompletableFuture<TransactionEvent> submit(Endorsement endorsement) {
+		CompletableFuture<TransactionEvent> cf = null;
+		if (commitTracker != null && !endorsement.responses.isEmpty())
+			cf = commitTracker.track(endorsement.responses.iterator().next().getTransactionID());
+		long start = System.nanoTime();
+		long signed = TimedCryptoSuite.signedNanos();
+		try {
+			CompletableFuture<TransactionEvent> sent = channel.sendTransaction(endorsement.responses);
+			if (cf == null) {
+				cf = sent;
+			} else {
+				CompletableFuture<TransactionEvent> tracked = cf;
+				sent.whenComplete((event, e) -> {
+					if (e != null)
+						tracked.completeExceptionally(e);
+				});
+			}
+		} catch (RuntimeException e) {
+			if (cf != null)
+				cf.completeExceptionally(e);
+			endorsement.count(outcome(e));
+			throw e;
+		} finally {
+			observeUnsigned(BROADCAST, start, signed);
+		}
+		long broadcast = System.nanoTime();
+		cf.whenComplete((event, e) -> {
+			if (e == null && event != null && event.isValid()) {
+				COMMIT.observeSince(broadcast);
+				endorsement.count("success");
+			} else {
+				endorsement.count(e != null ? outcome(e) : "failure");
+			}
+		});
+		return cf;
+	}
+
+	/**
+	 * Collect endorsements from the peers picked by the endorsement planner. A
+	 * peer that fails or times out is left out of the following attempts. A
+	 * peer that answers with an error status rejected the proposal itself,
+	 * which no other peer would accept either, so it is neither backed off nor
+	 * retried.
+	 * 
+	 * @return the successful responses, or the last failed ones
+	 */
+	private Endorsement endorse(EndorsementPlanner.ProposalFactory proposalFactory, int attempts)
+			throws ProposalException, InvalidArgumentException {
+		Collection<Peer> excluded = new HashSet<>();
+		TransactionProposalRequest request = null;
+		Collection<ProposalResponse> response = null;
+		for (int i = 0; i < attempts; i++) {
+			Collection<Peer> peers = endorsementPlanner != null ? endorsementPlanner.plan(excluded)
+					: channel.getPeers();
+			long start = System.nanoTime();
+			request = proposalFactory.newRequest();
+			BUILD.observeSince(start);
+			start = System.nanoTime();
+			long signed = TimedCryptoSuite.signedNanos();
+			try {
+				response = channel.sendTransactionProposal(request, peers);
+			} catch (ProposalException | InvalidArgumentException | RuntimeException e) {
+				new Endorsement(request, null).count(outcome(e));
+				throw e;
+			} finally {
+				observeUnsigned(ENDORSE, start, signed);
+			}
+			boolean success = true;
+			boolean rejected = false;
+			for (ProposalResponse pres : response) {
+				if (pres.getStatus() == ChaincodeResponse.Status.SUCCESS || isRejection(pres)) {
+					rejected |= pres.getStatus() != ChaincodeResponse.Status.SUCCESS;
+					if (endorsementPlanner != null)
+						endorsementPlanner.markSucceeded(pres.getPeer());
+				} else {
+					success = false;
+					excluded.add(pres.getPeer());
+					if (endorsementPlanner != null)
+						endorsementPlanner.markFailed(pres.getPeer());
+				}
+			}
+			if (success || rejected)
+				break;
+		}
+		return new Endorsement(request, response);
+	}
+
+	/**
+	 * Observe the time since start less the time this thread spent signing
+	 * since then, which the sign phase already counts.
+	 */
+	private static void observeUnsigned(Histogram.Child phase, long start, long signed) {
+		phase.observe(System.nanoTime() - start - (TimedCryptoSuite.signedNanos() - signed));
+	}
+
+	/**
+	 * Whether a failed response came from the peer itself. The SDK reports a
+	 * peer it could not reach or that did not answer in time with a failed
+	 * response that carries no proposal response from the peer.
+	 */
+	static boolean isRejection(ProposalResponse pres) {
+		return pres.getStatus() != ChaincodeResponse.Status.SUCCESS && pres.getProposalResponse() != null;
+	}
+
+	/**
+	 * The endorsed responses and the request they answer, which names the
+	 * chaincode function the transaction is counted under.
+	 */
+	private static class Endorsement {
+
+		final String chaincode;
+		final String function;
+		final Collection<ProposalResponse> responses;
+
+		Endorsement(TransactionProposalRequest request, Collection<ProposalResponse> responses) {
+			this.chaincode = request.getChaincodeID() != null ? request.getChaincodeID().getName() : "";
+			this.function = request.getFcn() != null ? request.getFcn() : "";
+			this.responses = responses;
+		}
+
+		void count(String outcome) {
+			TRANSACTIONS.labels(chaincode, function, outcome).inc();
+		}
+	}
+
+	/**
+	 * Classify failed proposal responses. The SDK catches the
+	 * TimeoutException of a peer that did not answer in time and reports a
+	 * failed response without a proposal response from the peer, keeping only
+	 * its own timeout message, so that is the one thing left to tell a timeout
+	 * from a transport failure.
+	 */
+	private static String outcome(Collection<ProposalResponse> responses) {
+		String outcome = "success";
+		for (ProposalResponse pres : responses) {
+			if (pres.getStatus() != ChaincodeResponse.Status.SUCCESS) {
+				if (pres.getProposalResponse() == null && pres.getMessage() != null
+						&& pres.getMessage().contains(SDK_PROPOSAL_TIMEOUT))
+					return "timeout";
+				outcome = "failure";
+			}
+		}
+		return outcome;
+	}
+
+	private static String outcome(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof TimeoutException)
+				return "timeout";
+		}
+		return "failure";
+	}
+
 	/**
 	 * 
 	 * Instantiate chaincode.
@@ -0,0 +1,158 @@
+package org.app.client;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockEvent.TransactionEvent;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.TransactionEventException;
+
+/**
+ * Tracks the commit outcome of submitted transactions with a single block
+ * listener per channel. Each block's transactions are decoded once and the
+ * waiting futures are looked up by transaction id; a transaction that does
+ * not show up in a block before its deadline fails with a TimeoutException.
+ */
+public class CommitTracker {
+
+	private static final long SWEEP_INTERVAL = 1000;
+
+	private static final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "commit-tracker-sweep");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+	private final long timeout;
+	// number of the last block that contained a tracked transaction
+	private final AtomicLong lastCommitBlock;
+	private final ScheduledFuture<?> sweep;
+
+	/**
+	 * Register the block listener on the channel.
+	 *
+	 * @param channel
+	 * @param timeout milliseconds to wait for a transaction to be committed
+	 * @throws InvalidArgumentException
+	 */
+	public CommitTracker(Channel channel, long timeout) throws InvalidArgumentException {
+		this(channel, timeout, new AtomicLong(-1));
+	}
+
+	/**
+	 * Register the block listener on the channel and record the blocks of the
+	 * tracked transactions in a counter that may be shared with other trackers.
+	 *
+	 * @param channel
+	 * @param timeout         milliseconds to wait for a transaction to be committed
+	 * @param lastCommitBlock updated with the number of every block that
+	 *                        contains a tracked transaction
+	 * @throws InvalidArgumentException
+	 */
+	public CommitTracker(Channel channel, long timeout, AtomicLong lastCommitBlock) throws InvalidArgumentException {
+		this.timeout = timeout;
+		this.lastCommitBlock = lastCommitBlock;
+		channel.registerBlockListener(this::onBlock);
+		sweep = sweeper.scheduleWithFixedDelay(this::expire, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop expiring transactions. Call when the channel is shut down.
+	 */
+	public void close() {
+		sweep.cancel(false);
+	}
+
+	/**
+	 * Start tracking a transaction. Call before the transaction is sent to the
+	 * orderer so that its block cannot be missed.
+	 *
+	 * @param txId
+	 * @return future completed with the commit event, or exceptionally if the
+	 *         transaction is invalid or not committed in time
+	 */
+	public CompletableFuture<TransactionEvent> track(String txId) {
+		Pending entry = new Pending(System.currentTimeMillis() + timeout);
+		Pending existing = pending.putIfAbsent(txId, entry);
+		if (existing != null)
+			return existing.future;
+		entry.future.whenComplete((event, e) -> pending.remove(txId, entry));
+		return entry.future;
+	}
+
+	/**
+	 * Return the number of transactions waiting for their commit event.
+	 *
+	 * @return
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Return the number of the last block that contained a transaction tracked
+	 * here, i.e. submitted by this client, or -1 if there is none yet. It is
+	 * updated before the futures of the block's transactions complete.
+	 *
+	 * @return
+	 */
+	public long getLastCommitBlock() {
+		return lastCommitBlock.get();
+	}
+
+	private void onBlock(BlockEvent blockEvent) {
+		if (pending.isEmpty())
+			return;
+		try {
+			for (TransactionEvent event : blockEvent.getTransactionEvents()) {
+				Pending entry = pending.get(event.getTransactionID());
+				if (entry == null)
+					continue;
+				lastCommitBlock.accumulateAndGet(blockEvent.getBlockNumber(), Math::max);
+				if (event.isValid())
+					entry.future.complete(event);
+				else
+					entry.future.completeExceptionally(new TransactionEventException("Transaction "
+							+ event.getTransactionID() + " is invalid, validation code " + event.getValidationCode(),
+							event));
+			}
+		} catch (Exception e) {
+			Logger.getLogger(CommitTracker.class.getName()).log(Level.WARNING,
+					"Could not decode block " + blockEvent.getBlockNumber(), e);
+		}
+	}
+
+	private void expire() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Pending> entry = it.next();
+			if (entry.getValue().deadline <= now) {
+				it.remove();
+				entry.getValue().future.completeExceptionally(new TimeoutException(
+						"Transaction " + entry.getKey() + " was not committed within " + timeout + " ms"));
+			}
+		}
+	}
+
+	private static class Pending {
+		final long deadline;
+		final CompletableFuture<TransactionEvent> future = new CompletableFuture<>();
+
+		Pending(long deadline) {
+			this.deadline = deadline;
+		}
+	}
+}
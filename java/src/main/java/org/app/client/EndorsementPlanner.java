@@ -0,0 +1,197 @@
+package org.app.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.app.config.Config;
+import org.hyperledger.fabric.protos.common.MspPrincipal.MSPPrincipal;
+import org.hyperledger.fabric.protos.common.MspPrincipal.MSPRole;
+import org.hyperledger.fabric.protos.common.Policies.SignaturePolicy;
+import org.hyperledger.fabric.protos.common.Policies.SignaturePolicyEnvelope;
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.TransactionProposalRequest;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Works out the smallest set of peers whose endorsements satisfy the
+ * chaincode endorsement policy, rotating the choice across the peers of each
+ * organization so that endorsement load is spread over the channel.
+ * 
+ * Without an explicit policy the Fabric default applies, a single member of
+ * any organization of the channel.
+ */
+public class EndorsementPlanner {
+
+	/**
+	 * Builds a fresh proposal for every endorsement attempt, the SDK refuses to
+	 * send a request twice.
+	 */
+	public interface ProposalFactory {
+		TransactionProposalRequest newRequest() throws InvalidArgumentException;
+	}
+
+	private final Channel channel;
+	private final Map<String, String> peerMspIds;
+	// each slot is satisfied by one endorsement from any of its organizations
+	private final List<Set<String>> slots;
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile List<PeerState> peers;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param channel
+	 * @param peerMspIds
+	 *            MSP id of every peer, keyed by peer name
+	 * @param policy
+	 *            chaincode endorsement policy, or null for the default policy
+	 * @throws InvalidProtocolBufferException
+	 */
+	public EndorsementPlanner(Channel channel, Map<String, String> peerMspIds, ChaincodeEndorsementPolicy policy)
+			throws InvalidProtocolBufferException {
+		this.channel = channel;
+		this.peerMspIds = peerMspIds;
+		if (policy == null) {
+			this.slots = Collections.singletonList(new HashSet<>(peerMspIds.values()));
+		} else {
+			SignaturePolicyEnvelope envelope = SignaturePolicyEnvelope
+					.parseFrom(policy.getChaincodeEndorsementPolicyAsBytes());
+			List<String> identities = new ArrayList<>();
+			for (MSPPrincipal principal : envelope.getIdentitiesList()) {
+				// only role principals name an organization, anything else can not be matched to peers
+				if (principal.getPrincipalClassification() == MSPPrincipal.Classification.ROLE)
+					identities.add(MSPRole.parseFrom(principal.getPrincipal()).getMspIdentifier());
+				else
+					identities.add(null);
+			}
+			this.slots = slots(envelope.getRule(), identities);
+		}
+	}
+
+	/**
+	 * Pick the peers for the next endorsement.
+	 * 
+	 * @param excluded
+	 *            peers that already failed for this transaction
+	 * @return peers satisfying the policy, or every peer of the channel when
+	 *         the policy can not be satisfied from the known peers
+	 */
+	public Collection<Peer> plan(Collection<Peer> excluded) {
+		List<PeerState> all = peers();
+		int n = all.size();
+		if (slots == null || n == 0)
+			return channel.getPeers();
+		long now = System.currentTimeMillis();
+		int start = Math.floorMod(next.getAndIncrement(), n);
+		List<Peer> chosen = new ArrayList<>(slots.size());
+		for (Set<String> slot : slots) {
+			PeerState pick = null;
+			for (int i = 0; i < n; i++) {
+				PeerState peer = all.get((start + i) % n);
+				if (chosen.contains(peer.peer) || excluded.contains(peer.peer) || !slot.contains(peer.mspId))
+					continue;
+				if (now - peer.failedAt >= Config.ENDORSEMENT_PEER_BACKOFF) {
+					pick = peer;
+					break;
+				}
+				if (pick == null)
+					pick = peer;
+			}
+			if (pick == null)
+				return channel.getPeers();
+			chosen.add(pick.peer);
+		}
+		return chosen;
+	}
+
+	/**
+	 * Number of peers a single endorsement needs under the policy.
+	 * 
+	 * @return
+	 */
+	public int getRequiredPeers() {
+		return slots == null ? peers().size() : slots.size();
+	}
+
+	/**
+	 * Remember that the peer failed to endorse, it is avoided for
+	 * Config.ENDORSEMENT_PEER_BACKOFF milliseconds.
+	 * 
+	 * @param peer
+	 */
+	public void markFailed(Peer peer) {
+		for (PeerState state : peers()) {
+			if (state.peer == peer)
+				state.failedAt = System.currentTimeMillis();
+		}
+	}
+
+	public void markSucceeded(Peer peer) {
+		for (PeerState state : peers()) {
+			if (state.peer == peer)
+				state.failedAt = 0;
+		}
+	}
+
+	/**
+	 * Smallest list of endorsement slots satisfying the rule, null when the rule
+	 * refers to identities that can not be mapped to organizations.
+	 */
+	private static List<Set<String>> slots(SignaturePolicy rule, List<String> identities) {
+		switch (rule.getTypeCase()) {
+		case SIGNED_BY:
+			String mspId = rule.getSignedBy() < identities.size() ? identities.get(rule.getSignedBy()) : null;
+			return mspId == null ? null : Collections.singletonList(Collections.singleton(mspId));
+		case N_OUT_OF:
+			List<List<Set<String>>> options = new ArrayList<>();
+			for (SignaturePolicy child : rule.getNOutOf().getRulesList()) {
+				List<Set<String>> option = slots(child, identities);
+				if (option != null)
+					options.add(option);
+			}
+			int required = rule.getNOutOf().getN();
+			if (options.size() < required)
+				return null;
+			options.sort((a, b) -> a.size() - b.size());
+			List<Set<String>> result = new ArrayList<>();
+			for (int i = 0; i < required; i++)
+				result.addAll(options.get(i));
+			return result;
+		default:
+			return null;
+		}
+	}
+
+	private List<PeerState> peers() {
+		List<PeerState> current = peers;
+		if (current == null || current.isEmpty()) {
+			current = new ArrayList<>();
+			for (Peer peer : channel.getPeers())
+				current.add(new PeerState(peer, peerMspIds.get(peer.getName())));
+			peers = current;
+		}
+		return current;
+	}
+
+	static class PeerState {
+		final Peer peer;
+		final String mspId;
+		volatile long failedAt;
+
+		PeerState(Peer peer, String mspId) {
+			this.peer = peer;
+			this.mspId = mspId;
+		}
+	}
+
+}
@@ -67,7 +67,7 @@ public class FabricClient {
 		CryptoSuite cryptoSuite = CryptoSuite.Factory.getCryptoSuite();
 		// setup the client
 		instance = HFClient.createNewInstance();
-		instance.setCryptoSuite(cryptoSuite);
+		instance.setCryptoSuite(new TimedCryptoSuite(cryptoSuite));
 		instance.setUserContext(context);
 	}
 
@@ -0,0 +1,386 @@
+package org.app.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.app.config.Config;
+import org.app.metrics.MetricsServer;
+import org.app.user.UserContext;
+import org.hyperledger.fabric.sdk.BlockListener;
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.EventHub;
+import org.hyperledger.fabric.sdk.Orderer;
+import org.hyperledger.fabric.sdk.Peer;
+import org.json.JSONObject;
+
+/**
+ * Process-wide gateway to the Fabric network. Holds the enrolled admin
+ * identity, the HFClient and the initialized channels, and is shared by the
+ * chaincode invoke and query classes. Enrollment and channel setup run once,
+ * asynchronously, when the gateway is first requested; a stored enrollment
+ * that is still valid is reused without contacting the CA. Transactions on
+ * the default channel are submitted through a SubmissionEngine whose stripes
+ * share the commit tracker of the default channel. Callers resolve the gateway
+ * with getInstance on every use, so that a gateway whose startup failed is
+ * shut down and replaced, after a delay that doubles with every failed start;
+ * block listeners added with addBlockListener are carried over to the
+ * replacement.
+ */
+
+public class FabricGateway {
+
+	private static volatile FabricGateway instance;
+	// delay before the next gateway is started if this one fails, guarded by the class lock
+	private static long restartDelay = Config.GATEWAY_RESTART_DELAY;
+	// started with the first gateway and kept when a failed gateway is replaced
+	private static MetricsServer metricsServer;
+	// registered on the default channel of every gateway that starts
+	private static final List<BlockListener> blockListeners = new CopyOnWriteArrayList<>();
+	// shared by the gateways so that a replacement keeps the adapted limit
+	private static final AdaptiveLimiter writeLimiter = new AdaptiveLimiter("write", Config.WRITE_LIMIT_INITIAL,
+			Config.WRITE_LIMIT_MIN, Config.HASH_INVOKE_WINDOW, Config.WRITE_LIMIT_LATENCY_TOLERANCE);
+	// number of the last block with a transaction of this client, shared by the commit trackers of all gateways
+	private static final AtomicLong lastCommitBlock = new AtomicLong(-1);
+
+	private final JSONObject configJson;
+	private final CompletableFuture<FabricGateway> ready;
+	private final Map<String, ChannelClient> channelClients = new ConcurrentHashMap<>();
+	// everything opened by this gateway, closed when a failed gateway is replaced
+	private final List<Channel> channels = new CopyOnWriteArrayList<>();
+	private final List<CommitTracker> commitTrackers = new CopyOnWriteArrayList<>();
+	// time from which a failed gateway may be replaced
+	private volatile long restartAt;
+
+	private UserContext adminUserContext;
+	private FabricClient fabClient;
+	private SubmissionEngine submissionEngine;
+	// the block listeners are registered on the default channel
+	private boolean listening;
+
+	/**
+	 * Return the shared gateway, starting it with the default configuration if
+	 * it has not been started yet.
+	 * 
+	 * @return
+	 */
+	public static FabricGateway getInstance() {
+		FabricGateway gateway = instance;
+		if (gateway != null && !gateway.isRestartDue())
+			return gateway;
+		return getInstance(defaultConfig());
+	}
+
+	/**
+	 * Return the shared gateway, starting it with the given configuration if it
+	 * has not been started yet or if the previous startup failed and its
+	 * restart delay has passed. Until then the failed gateway is returned.
+	 * 
+	 * @param configJson caUrl, Admin, Adminpw, Eroll_Name, Eroll_Address, Orderer_Name, Orderer_Address
+	 * @return
+	 */
+	public static synchronized FabricGateway getInstance(JSONObject configJson) {
+		if (instance != null && instance.isRestartDue()) {
+			instance.shutdown();
+			instance = null;
+		}
+		if (instance == null) {
+			instance = new FabricGateway(configJson);
+		} else if (!instance.configJson.similar(configJson)) {
+			Logger.getLogger(FabricGateway.class.getName()).log(Level.WARNING,
+					"Fabric gateway is already started, ignoring configuration " + configJson);
+		}
+		return instance;
+	}
+
+	private FabricGateway(JSONObject configJson) {
+		this.configJson = configJson;
+		this.ready = new CompletableFuture<>();
+		Thread starter = new Thread(() -> {
+			try {
+				start();
+				synchronized (FabricGateway.class) {
+					restartDelay = Config.GATEWAY_RESTART_DELAY;
+				}
+				ready.complete(this);
+			} catch (Exception e) {
+				System.out.println("配置信息初始化失败！");
+				e.printStackTrace();
+				synchronized (FabricGateway.class) {
+					restartAt = System.currentTimeMillis() + restartDelay;
+					restartDelay = Math.min(restartDelay * 2, Config.GATEWAY_RESTART_MAX_DELAY);
+				}
+				ready.completeExceptionally(e);
+			}
+		}, "fabric-gateway-start");
+		starter.setDaemon(true);
+		starter.start();
+	}
+
+	private void start() throws Exception {
+		startMetricsServer();
+		CAClient caClient = new CAClient(configJson.getString("caUrl"), null);
+		// Enroll Admin to Org1MSP
+		UserContext adminUserContext = new UserContext();
+		adminUserContext.setName(configJson.getString("Admin"));
+		adminUserContext.setAffiliation(Config.ORG1);
+		adminUserContext.setMspId(Config.ORG1_MSP);
+		caClient.setAdminUserContext(adminUserContext);
+		this.adminUserContext = caClient.enrollAdminUser(configJson.getString("Admin"),
+				configJson.getString("Adminpw"));
+
+		fabClient = new FabricClient(this.adminUserContext);
+		ChannelClient channelClient = initChannel(Config.CHANNEL_NAME);
+		channelClients.put(Config.CHANNEL_NAME, channelClient);
+		submissionEngine = new SubmissionEngine(initStripes(channelClient, Config.SUBMIT_STRIPES));
+		attachBlockListeners(channelClient.getChannel());
+		Logger.getLogger(FabricGateway.class.getName()).log(Level.INFO, "Fabric gateway ready on channel "
+				+ Config.CHANNEL_NAME + " with " + submissionEngine.getStripeCount() + " submission stripes");
+	}
+
+	private boolean isRestartDue() {
+		return ready.isCompletedExceptionally() && System.currentTimeMillis() >= restartAt;
+	}
+
+	/**
+	 * Close the channels and commit trackers of a gateway whose startup failed.
+	 */
+	private void shutdown() {
+		for (CommitTracker commitTracker : commitTrackers)
+			commitTracker.close();
+		for (Channel channel : channels)
+			channel.shutdown(true);
+	}
+
+	private void attachBlockListeners(Channel channel) throws Exception {
+		synchronized (FabricGateway.class) {
+			for (BlockListener listener : blockListeners)
+				channel.registerBlockListener(listener);
+			listening = true;
+		}
+	}
+
+	private static synchronized void startMetricsServer() {
+		if (metricsServer != null || Config.METRICS_PORT <= 0)
+			return;
+		try {
+			metricsServer = new MetricsServer(Config.METRICS_HOST, Config.METRICS_PORT);
+			metricsServer.start();
+			Logger.getLogger(FabricGateway.class.getName()).log(Level.INFO,
+					"Metrics served at http://" + Config.METRICS_HOST + ":" + Config.METRICS_PORT + "/metrics");
+		} catch (IOException e) {
+			Logger.getLogger(FabricGateway.class.getName()).log(Level.WARNING,
+					"Metrics endpoint not started on port " + Config.METRICS_PORT, e);
+		}
+	}
+
+	private ChannelClient initChannel(String name) throws Exception {
+		ChannelClient channelClient = initChannel(fabClient, name);
+		CommitTracker commitTracker = new CommitTracker(channelClient.getChannel(), Config.COMMIT_TIMEOUT,
+				name.equals(Config.CHANNEL_NAME) ? lastCommitBlock : new AtomicLong(-1));
+		commitTrackers.add(commitTracker);
+		channelClient.setCommitTracker(commitTracker);
+		return channelClient;
+	}
+
+	/**
+	 * Set up a channel on the given client. The event hub is needed even when
+	 * commits are tracked elsewhere: the SDK registers a listener for every
+	 * transaction it sends and only removes it on the commit event.
+	 */
+	private ChannelClient initChannel(FabricClient client, String name) throws Exception {
+		ChannelClient channelClient = client.createChannelClient(name);
+		Channel channel = channelClient.getChannel();
+		channels.add(channel);
+		Orderer orderer = client.getInstance().newOrderer(configJson.getString("Orderer_Name"),
+				configJson.getString("Orderer_Address"));
+		Peer peer = client.getInstance().newPeer(configJson.getString("Eroll_Name"),
+				configJson.getString("Eroll_Address"));
+		EventHub eventHub = client.getInstance().newEventHub(Config.EVENTHUB_NAME, Config.EVENTHUB_URL);
+		channel.addOrderer(orderer);
+		channel.addPeer(peer);
+		for (int i = 0; i < Config.PEER_URLS.length; i++) {
+			if (!Config.PEER_URLS[i].equals(peer.getUrl()))
+				channel.addPeer(client.getInstance().newPeer(Config.PEER_NAMES[i], Config.PEER_URLS[i]));
+		}
+		channel.addEventHub(eventHub);
+		channel.initialize();
+		channelClient.setEndorsementPlanner(newEndorsementPlanner(channel));
+		return channelClient;
+	}
+
+	/**
+	 * The default channel client is the first stripe, each further stripe gets
+	 * its own HFClient and connections and shares the default commit tracker.
+	 */
+	private List<ChannelClient> initStripes(ChannelClient first, int count) throws Exception {
+		List<ChannelClient> stripes = new ArrayList<>();
+		stripes.add(first);
+		for (int i = 1; i < count; i++) {
+			ChannelClient stripe = initChannel(new FabricClient(adminUserContext), first.getName());
+			stripe.setCommitTracker(first.getCommitTracker());
+			stripes.add(stripe);
+		}
+		return stripes;
+	}
+
+	private EndorsementPlanner newEndorsementPlanner(Channel channel) throws Exception {
+		Map<String, String> peerMspIds = new HashMap<>();
+		for (Peer peer : channel.getPeers())
+			peerMspIds.put(peer.getName(), Config.ORG1_MSP);
+		for (int i = 0; i < Config.PEER_NAMES.length; i++)
+			peerMspIds.put(Config.PEER_NAMES[i], Config.PEER_MSPIDS[i]);
+		ChaincodeEndorsementPolicy policy = null;
+		if (Config.ENDORSEMENT_POLICY_PATH != null) {
+			policy = new ChaincodeEndorsementPolicy();
+			policy.fromYamlFile(new File(Config.ENDORSEMENT_POLICY_PATH));
+		}
+		return new EndorsementPlanner(channel, peerMspIds, policy);
+	}
+
+	/**
+	 * Return the number of the last block of the default channel that contained
+	 * a transaction submitted by this client through any gateway, or -1 if
+	 * there is none yet. Does not resolve the gateway.
+	 * 
+	 * @return
+	 */
+	public static long getLastCommitBlock() {
+		return lastCommitBlock.get();
+	}
+
+	/**
+	 * Future completed once the admin is enrolled and the default channel is
+	 * initialized.
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<FabricGateway> ready() {
+		return ready;
+	}
+
+	/**
+	 * Return the enrolled admin user, waiting for startup.
+	 * 
+	 * @return
+	 */
+	public UserContext getUserContext() {
+		return ready.join().adminUserContext;
+	}
+
+	/**
+	 * Return the shared Fabric client, waiting for startup.
+	 * 
+	 * @return
+	 */
+	public FabricClient getFabClient() {
+		return ready.join().fabClient;
+	}
+
+	/**
+	 * Return the limiter shared by asynchronous writes, which adapts the number
+	 * of transactions in flight to their latency and failures. Does not wait
+	 * for startup.
+	 * 
+	 * @return
+	 */
+	public AdaptiveLimiter getWriteLimiter() {
+		return writeLimiter;
+	}
+
+	/**
+	 * Return the submission stripes of the default channel, waiting for startup.
+	 * 
+	 * @return
+	 */
+	public SubmissionEngine getSubmissionEngine() {
+		return ready.join().submissionEngine;
+	}
+
+	/**
+	 * Return the client of the default channel, waiting for startup.
+	 * 
+	 * @return
+	 */
+	public ChannelClient getChannelClient() {
+		return getChannelClient(Config.CHANNEL_NAME);
+	}
+
+	/**
+	 * Return the client of an initialized channel, initializing it on first use.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public ChannelClient getChannelClient(String name) {
+		ready.join();
+		return channelClients.computeIfAbsent(name, n -> {
+			try {
+				return initChannel(n);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**
+	 * Register a block listener on the default channel of the gateway once it is
+	 * ready, and again on every gateway that replaces a failed one. Local views
+	 * of the ledger use it instead of registerBlockListener so that they keep
+	 * receiving blocks after the gateway is replaced.
+	 * 
+	 * @param listener
+	 */
+	public static void addBlockListener(BlockListener listener) {
+		synchronized (FabricGateway.class) {
+			blockListeners.add(listener);
+			if (instance == null || !instance.listening)
+				return;
+			try {
+				instance.channelClients.get(Config.CHANNEL_NAME).getChannel().registerBlockListener(listener);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}
+	}
+
+	/**
+	 * Register a block listener on the default channel once this gateway is ready.
+	 * 
+	 * @param listener
+	 * @return future completed with the listener handle
+	 */
+	public CompletableFuture<String> registerBlockListener(BlockListener listener) {
+		return ready.thenApply(gateway -> {
+			try {
+				return gateway.getChannelClient().getChannel().registerBlockListener(listener);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	private static JSONObject defaultConfig() {
+		JSONObject configJson = new JSONObject();
+		configJson.put("caUrl", Config.CA_ORG1_URL);
+		configJson.put("Admin", Config.ADMIN);
+		configJson.put("Adminpw", Config.ADMIN_PASSWORD);
+		configJson.put("Eroll_Name", Config.PEER_NAME);
+		configJson.put("Eroll_Address", Config.PEER_URL);
+		configJson.put("Orderer_Name", Config.ORDERER_NAME);
+		configJson.put("Orderer_Address", Config.ORDERER_URL);
+		return configJson;
+	}
+
+}
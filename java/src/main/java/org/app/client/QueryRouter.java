@@ -0,0 +1,316 @@
+package org.app.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.app.config.Config;
+import org.app.metrics.Counter;
+import org.app.metrics.Histogram;
+import org.app.metrics.Metrics;
+import org.hyperledger.fabric.sdk.ChaincodeResponse;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
+
+/**
+ * Routes each chaincode query to a single peer of the channel instead of all
+ * of them, and fails over to the next peer when a peer cannot be reached or
+ * does not answer in time; a chaincode error is returned as it is. With hedging
+ * enabled, a query that has not answered within the observed latency
+ * percentile is duplicated to a second peer and the first answer wins.
+ */
+public class QueryRouter {
+
+	public enum Strategy {
+		ROUND_ROBIN, LEAST_OUTSTANDING
+	}
+
+	/**
+	 * Builds a fresh request for every attempt, the SDK refuses to send a
+	 * request twice.
+	 */
+	public interface RequestFactory {
+		QueryByChaincodeRequest newRequest() throws InvalidArgumentException;
+	}
+
+	private static final int LATENCY_SAMPLES = 1024;
+
+	private static final Histogram PEER_LATENCY = Metrics.histogram("fabric_client_query_peer_seconds",
+			"Latency of chaincode queries answered by each peer, including chaincode errors", "peer");
+	private static final Counter PEER_FAILURES = Metrics.counter("fabric_client_query_peer_failures_total",
+			"Chaincode queries that failed on a peer", "peer");
+
+	private static final AtomicBoolean NOT_CANCELLED = new AtomicBoolean();
+
+	private static final ExecutorService hedgeExecutor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "query-router-hedge");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Channel channel;
+	private final Strategy strategy;
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile List<PeerState> peers;
+
+	// ring buffer of recent answered query latencies, in nanoseconds
+	private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+	private final AtomicInteger latencyCount = new AtomicInteger();
+	private volatile long hedgeDelay = TimeUnit.MILLISECONDS.toNanos(Config.QUERY_HEDGE_MAX_DELAY);
+
+	/**
+	 * Constructor
+	 * 
+	 * @param channel
+	 * @param strategy
+	 */
+	public QueryRouter(Channel channel, Strategy strategy) {
+		this.channel = channel;
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Send a query to one peer, trying up to Config.QUERY_ATTEMPTS peers until
+	 * one answers, successfully or with a chaincode error.
+	 * 
+	 * @param requestFactory
+	 * @return the answer, or the last failed response if no peer answered
+	 * @throws InvalidArgumentException
+	 * @throws ProposalException
+	 */
+	public Collection<ProposalResponse> query(RequestFactory requestFactory)
+			throws InvalidArgumentException, ProposalException {
+		List<PeerState> candidates = candidates();
+		if (Config.QUERY_HEDGE_ENABLED && candidates.size() > 1)
+			return hedgedQuery(requestFactory, candidates);
+		return failoverQuery(requestFactory, candidates, Config.QUERY_ATTEMPTS);
+	}
+
+	/**
+	 * Current hedge delay, the Config.QUERY_HEDGE_PERCENTILE of recent query
+	 * latencies bounded by the configured minimum and maximum.
+	 * 
+	 * @return delay in milliseconds
+	 */
+	public long getHedgeDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(hedgeDelay);
+	}
+
+	private Collection<ProposalResponse> failoverQuery(RequestFactory requestFactory, List<PeerState> candidates,
+			int attempts) throws InvalidArgumentException, ProposalException {
+		Collection<ProposalResponse> failed = null;
+		ProposalException error = null;
+		for (PeerState peer : candidates) {
+			if (attempts-- == 0)
+				break;
+			try {
+				Collection<ProposalResponse> responses = send(requestFactory, peer, NOT_CANCELLED);
+				if (isAnswered(responses))
+					return responses;
+				failed = responses;
+			} catch (ProposalException e) {
+				error = e;
+			}
+		}
+		if (failed != null)
+			return failed;
+		if (error != null)
+			throw error;
+		throw new ProposalException("No peer to query on channel " + channel.getName());
+	}
+
+	private Collection<ProposalResponse> hedgedQuery(RequestFactory requestFactory, List<PeerState> candidates)
+			throws InvalidArgumentException, ProposalException {
+		CompletionService<Collection<ProposalResponse>> race = new ExecutorCompletionService<>(hedgeExecutor);
+		List<Future<Collection<ProposalResponse>>> inFlight = new ArrayList<>(2);
+		Collection<ProposalResponse> failed = null;
+		Exception error = null;
+		// set before the losing query is cancelled, so that its failure is not held against its peer
+		AtomicBoolean cancelled = new AtomicBoolean();
+		try {
+			inFlight.add(race.submit(() -> send(requestFactory, candidates.get(0), cancelled)));
+			Future<Collection<ProposalResponse>> done = race.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+			if (done == null)
+				inFlight.add(race.submit(() -> send(requestFactory, candidates.get(1), cancelled)));
+			for (int finished = 0; finished < inFlight.size(); finished++) {
+				if (done == null)
+					done = race.take();
+				try {
+					Collection<ProposalResponse> responses = done.get();
+					if (isAnswered(responses))
+						return responses;
+					failed = responses;
+				} catch (ExecutionException e) {
+					error = (Exception) e.getCause();
+				}
+				done = null;
+				// the first peer failed before the hedge delay, ask the second one right away
+				if (inFlight.size() == 1)
+					inFlight.add(race.submit(() -> send(requestFactory, candidates.get(1), cancelled)));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ProposalException(e);
+		} finally {
+			cancelled.set(true);
+			for (Future<Collection<ProposalResponse>> future : inFlight)
+				future.cancel(true);
+		}
+
+		// both hedged peers failed, fall back to the remaining ones
+		if (candidates.size() > 2 && Config.QUERY_ATTEMPTS > 2)
+			return failoverQuery(requestFactory, candidates.subList(2, candidates.size()), Config.QUERY_ATTEMPTS - 2);
+		if (failed != null)
+			return failed;
+		if (error instanceof InvalidArgumentException)
+			throw (InvalidArgumentException) error;
+		if (error instanceof ProposalException)
+			throw (ProposalException) error;
+		throw new ProposalException(error);
+	}
+
+	private Collection<ProposalResponse> send(RequestFactory requestFactory, PeerState peer, AtomicBoolean cancelled)
+			throws InvalidArgumentException, ProposalException {
+		QueryByChaincodeRequest request = requestFactory.newRequest();
+		long start = System.nanoTime();
+		peer.outstanding.incrementAndGet();
+		try {
+			Collection<ProposalResponse> responses = channel.queryByChaincode(request,
+					Collections.singleton(peer.peer));
+			if (isAnswered(responses)) {
+				long nanos = System.nanoTime() - start;
+				peer.failedAt = 0;
+				peer.latency.observe(nanos);
+				recordLatency(nanos);
+			} else if (!cancelled.get()) {
+				// the SDK turns the interrupt of a cancelled hedge into a failed response
+				peer.failedAt = System.currentTimeMillis();
+				peer.failures.inc();
+			}
+			return responses;
+		} catch (ProposalException e) {
+			// a hedged query cancelled because the other peer answered first is not a peer failure
+			if (!cancelled.get()) {
+				peer.failedAt = System.currentTimeMillis();
+				peer.failures.inc();
+			}
+			throw e;
+		} finally {
+			peer.outstanding.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Store a latency sample and update the hedge delay every eighth of the
+	 * buffer. The counter may wrap; LATENCY_SAMPLES divides 2^32, so the slots
+	 * keep cycling in order across the wrap, and a negative count means the
+	 * buffer is full.
+	 */
+	private void recordLatency(long nanos) {
+		int n = latencyCount.getAndIncrement();
+		int slot = Math.floorMod(n, LATENCY_SAMPLES);
+		latencies.set(slot, nanos);
+		if (slot % (LATENCY_SAMPLES / 8) == LATENCY_SAMPLES / 8 - 1)
+			updateHedgeDelay(n >= 0 && n < LATENCY_SAMPLES ? n + 1 : LATENCY_SAMPLES);
+	}
+
+	private void updateHedgeDelay(int samples) {
+		long[] sorted = new long[samples];
+		for (int i = 0; i < samples; i++)
+			sorted[i] = latencies.get(i);
+		Arrays.sort(sorted);
+		long percentile = sorted[(int) Math.min(samples - 1, Math.round(samples * Config.QUERY_HEDGE_PERCENTILE))];
+		long min = TimeUnit.MILLISECONDS.toNanos(Config.QUERY_HEDGE_MIN_DELAY);
+		long max = TimeUnit.MILLISECONDS.toNanos(Config.QUERY_HEDGE_MAX_DELAY);
+		hedgeDelay = Math.max(min, Math.min(max, percentile));
+	}
+
+	/**
+	 * Peers in the order they should be tried: healthy peers first, starting
+	 * with the one picked by the routing strategy, then peers that failed
+	 * within the last Config.QUERY_PEER_BACKOFF milliseconds.
+	 */
+	List<PeerState> candidates() {
+		List<PeerState> all = peers();
+		int n = all.size();
+		List<PeerState> healthy = new ArrayList<>(n);
+		List<PeerState> backedOff = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		int start = n == 0 ? 0 : Math.floorMod(next.getAndIncrement(), n);
+		for (int i = 0; i < n; i++) {
+			PeerState peer = all.get((start + i) % n);
+			if (now - peer.failedAt < Config.QUERY_PEER_BACKOFF)
+				backedOff.add(peer);
+			else
+				healthy.add(peer);
+		}
+		if (strategy == Strategy.LEAST_OUTSTANDING && healthy.size() > 1) {
+			int best = 0;
+			for (int i = 1; i < healthy.size(); i++) {
+				if (healthy.get(i).outstanding.get() < healthy.get(best).outstanding.get())
+					best = i;
+			}
+			Collections.swap(healthy, 0, best);
+		}
+		healthy.addAll(backedOff);
+		return healthy;
+	}
+
+	private List<PeerState> peers() {
+		List<PeerState> current = peers;
+		if (current == null || current.isEmpty()) {
+			current = new ArrayList<>();
+			for (Peer peer : channel.getPeers())
+				current.add(new PeerState(peer));
+			peers = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Whether the peer answered the query, successfully or with a chaincode
+	 * error. A chaincode error is returned to the caller as it is: every peer
+	 * would give the same answer, so it neither backs the peer off nor fails
+	 * over to another one.
+	 */
+	private static boolean isAnswered(Collection<ProposalResponse> responses) {
+		if (responses.isEmpty())
+			return false;
+		for (ProposalResponse response : responses) {
+			if (response.getStatus() != ChaincodeResponse.Status.SUCCESS && !ChannelClient.isRejection(response))
+				return false;
+		}
+		return true;
+	}
+
+	static class PeerState {
+		final Peer peer;
+		final AtomicInteger outstanding = new AtomicInteger();
+		volatile long failedAt;
+		final Histogram.Child latency;
+		final Counter.Child failures;
+
+		PeerState(Peer peer) {
+			this.peer = peer;
+			this.latency = PEER_LATENCY.labels(peer.getName());
+			this.failures = PEER_FAILURES.labels(peer.getName());
+		}
+	}
+
+}
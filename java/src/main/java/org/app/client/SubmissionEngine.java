@@ -0,0 +1,56 @@
+package org.app.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Spreads transaction submission over independent stripes. Each stripe is a
+ * channel client on its own HFClient with its own peer, orderer and event hub
+ * connections, so concurrent callers neither share a gRPC connection nor
+ * serialize on one SDK channel. Identifiers are hashed onto stripes, which
+ * keeps the writes of one identifier on the same connections.
+ */
+public class SubmissionEngine {
+
+	private final ChannelClient[] stripes;
+
+	/**
+	 * Constructor
+	 *
+	 * @param stripes channel clients of the same channel, at least one
+	 */
+	public SubmissionEngine(List<ChannelClient> stripes) {
+		if (stripes.isEmpty())
+			throw new IllegalArgumentException("at least one stripe is required");
+		this.stripes = stripes.toArray(new ChannelClient[0]);
+	}
+
+	/**
+	 * Return the stripe an identifier is submitted on.
+	 *
+	 * @param identifier
+	 * @return
+	 */
+	public ChannelClient stripe(String identifier) {
+		if (stripes.length == 1 || identifier == null)
+			return stripes[0];
+		int h = identifier.hashCode();
+		h ^= h >>> 16;
+		return stripes[(h & 0x7fffffff) % stripes.length];
+	}
+
+	/**
+	 * Return all the stripes.
+	 *
+	 * @return
+	 */
+	public List<ChannelClient> getStripes() {
+		return Collections.unmodifiableList(Arrays.asList(stripes));
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+}
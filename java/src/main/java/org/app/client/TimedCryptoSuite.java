@@ -0,0 +1,100 @@
+package org.app.client;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.Collection;
+import java.util.Properties;
+
+import org.app.metrics.Histogram;
+import org.app.metrics.Metrics;
+import org.hyperledger.fabric.sdk.exception.CryptoException;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.security.CryptoSuite;
+
+/**
+ * CryptoSuite that delegates to the SDK's suite and times every signature,
+ * which covers both the transaction proposals and the envelopes sent to the
+ * orderer. The time is also summed per thread so that the endorse and
+ * broadcast phases, which sign on the calling thread, can leave it out.
+ */
+public class TimedCryptoSuite implements CryptoSuite {
+
+	private static final Histogram.Child SIGN = Metrics.histogram("fabric_client_write_phase_seconds",
+			"Time spent in each phase of a transaction, signing is only counted under sign", "phase").labels("sign");
+
+	private static final ThreadLocal<long[]> SIGNED = ThreadLocal.withInitial(() -> new long[1]);
+
+	private final CryptoSuite delegate;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param delegate
+	 */
+	public TimedCryptoSuite(CryptoSuite delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public byte[] sign(PrivateKey key, byte[] plainText) throws CryptoException {
+		long start = System.nanoTime();
+		try {
+			return delegate.sign(key, plainText);
+		} finally {
+			long nanos = System.nanoTime() - start;
+			SIGN.observe(nanos);
+			SIGNED.get()[0] += nanos;
+		}
+	}
+
+	/**
+	 * Return the total time the current thread has spent signing.
+	 * 
+	 * @return nanoseconds
+	 */
+	static long signedNanos() {
+		return SIGNED.get()[0];
+	}
+
+	@Override
+	public void init() throws CryptoException, InvalidArgumentException {
+		delegate.init();
+	}
+
+	@Override
+	public void setProperties(Properties properties) throws CryptoException, InvalidArgumentException {
+		delegate.setProperties(properties);
+	}
+
+	@Override
+	public Properties getProperties() {
+		return delegate.getProperties();
+	}
+
+	@Override
+	public void loadCACertificates(Collection<Certificate> certificates) throws CryptoException {
+		delegate.loadCACertificates(certificates);
+	}
+
+	@Override
+	public void loadCACertificatesAsBytes(Collection<byte[]> certificates) throws CryptoException {
+		delegate.loadCACertificatesAsBytes(certificates);
+	}
+
+	@Override
+	public KeyPair keyGen() throws CryptoException {
+		return delegate.keyGen();
+	}
+
+	@Override
+	public boolean verify(byte[] certificate, String signatureAlgorithm, byte[] signature, byte[] plainText)
+			throws CryptoException {
+		return delegate.verify(certificate, signatureAlgorithm, signature, plainText);
+	}
+
+	@Override
+	public byte[] hash(byte[] plainText) {
+		return delegate.hash(plainText);
+	}
+}
@@ -24,12 +24,78 @@ public class Config {
 	
 	public static final String CA_ORG1_URL = "http://localhost:7054";
 
+	// 本地保存的证书距过期不足该时长（毫秒）时重新向CA登记
+	public static final long CREDENTIAL_RENEW_MARGIN = 24L * 60 * 60 * 1000;
+	// 后台向CA查询其证书以核对已保存证书的签发者时的连接与读取超时（毫秒），CA不可达时沿用已保存的证书
+	public static final int CA_INFO_TIMEOUT = 5000;
+
+	public static final String PEER_NAME = "peer0.org1.example.com";
+
+	public static final String PEER_URL = "grpc://localhost:7051";
+
+	// 通道中的全部peer节点，读取请求在这些节点间负载均衡
+	public static final String[] PEER_NAMES = { "peer0.org1.example.com", "peer1.org1.example.com",
+			"peer2.org1.example.com", "peer3.org1.example.com", "peer4.org1.example.com", "peer5.org1.example.com" };
+
+	public static final String[] PEER_URLS = { "grpc://localhost:7051", "grpc://localhost:7056",
+			"grpc://localhost:8051", "grpc://localhost:8056", "grpc://localhost:9051", "grpc://localhost:9056" };
+
+	// 各peer节点所属组织的MSP ID，用于按背书策略选择背书节点
+	public static final String[] PEER_MSPIDS = { ORG1_MSP, ORG1_MSP, ORG1_MSP, ORG1_MSP, ORG1_MSP, ORG1_MSP };
+
+	// 链码背书策略文件（与实例化链码时使用的策略一致），为null时按Fabric默认策略：通道内任一组织的一个成员背书即可
+	public static final String ENDORSEMENT_POLICY_PATH = null;
+
+	// 交易提案等待背书响应的超时时间（毫秒）
+	public static final long PROPOSAL_WAIT_TIME = 1000;
+
+	// 单笔交易最多尝试的背书节点组合数，背书失败时换一组节点重试
+	public static final int ENDORSEMENT_ATTEMPTS = 3;
+
+	// 背书失败的peer节点在该时长（毫秒）内不再优先被选为背书节点
+	public static final long ENDORSEMENT_PEER_BACKOFF = 5000;
+
+	// 等待交易提交事件的超时时间（毫秒），超时仍未出现在区块中的交易按超时失败
+	public static final long COMMIT_TIMEOUT = 30000;
+
+	// 提交交易的条带数，每个条带使用独立的HFClient和gRPC连接，标识按hash分配到条带
+	public static final int SUBMIT_STRIPES = Runtime.getRuntime().availableProcessors();
+
+	// 网关启动失败后再次启动前的等待时间（毫秒），连续失败时加倍，直到上限
+	public static final long GATEWAY_RESTART_DELAY = 1000;
+	public static final long GATEWAY_RESTART_MAX_DELAY = 60000;
+
+	// 读取请求的peer选择策略：ROUND_ROBIN 轮询，LEAST_OUTSTANDING 未完成请求最少
+	public static final String QUERY_ROUTING_STRATEGY = "LEAST_OUTSTANDING";
+
+	// 单次读取最多尝试的peer节点数
+	public static final int QUERY_ATTEMPTS = 3;
+
+	// 读取失败的peer节点在该时长（毫秒）内排在其他节点之后
+	public static final long QUERY_PEER_BACKOFF = 5000;
+
+	// 对冲读取：首个peer在观测到的延迟分位数内未返回时，向第二个peer发送相同的读取请求，取先返回者
+	public static final boolean QUERY_HEDGE_ENABLED = true;
+
+	// 对冲读取的触发延迟取近期读取延迟的该分位数
+	public static final double QUERY_HEDGE_PERCENTILE = 0.95;
+
+	// 对冲读取触发延迟的下限（毫秒）
+	public static final long QUERY_HEDGE_MIN_DELAY = 5;
+
+	// 对冲读取触发延迟的上限（毫秒），延迟样本不足时使用该值
+	public static final long QUERY_HEDGE_MAX_DELAY = 200;
+
 	public static final String ORDERER_URL = "grpc://localhost:7050";
 	
 	public static final String ORDERER_NAME = "orderer.example.com";
 
 	public static final String CHANNEL_NAME = "mychannel";
 
+	public static final String EVENTHUB_NAME = "peer0.org1.example.com";
+
+	public static final String EVENTHUB_URL = "grpc://localhost:7053";
+
 	public static final String CHAINCODE_ROOT_DIR = "chaincode";
 	
 	public static final String CHAINCODE_1_NAME = "cc_authority";
@@ -44,6 +110,95 @@ public class Config {
 
 	public static final String CHAINCODE_2_VERSION = "1";
 
+	// 异步写入映射数据hash时，同时处于背书/排序/提交阶段的交易数上限；实际窗口在该上限内按提交延迟和失败自适应调整
+	public static final int HASH_INVOKE_WINDOW = 64;
+
+	// 自适应写入窗口的初始值和下限
+	public static final int WRITE_LIMIT_INITIAL = 16;
+
+	public static final int WRITE_LIMIT_MIN = 1;
+
+	// 近期平均写入延迟超过长期平均的该倍数时缩小写入窗口
+	public static final double WRITE_LIMIT_LATENCY_TOLERANCE = 1.5;
+
+	// 批量写入映射数据hash时，单笔交易包含的标识数上限
+	public static final int HASH_BATCH_SIZE = 100;
+
+	// 批量写入映射数据hash时，首个待写入标识的最长等待时间（毫秒）
+	public static final long HASH_BATCH_TIMEOUT = 50;
+
+	// 是否在本地维护cc_hash世界状态的副本，QueryHash优先从副本读取
+	public static final boolean HASH_REPLICA_ENABLED = true;
+
+	// 本地副本允许的陈旧时长（毫秒），超过该时长未与链高度确认一致时读取回退到peer查询
+	public static final long HASH_REPLICA_MAX_STALENESS = 5000;
+
+	// 本地副本查询链高度、补齐缺失区块的间隔（毫秒）
+	public static final long HASH_REPLICA_SYNC_INTERVAL = 1000;
+
+	// 本地副本的快照文件，相对于工作目录；重启时加载快照，只重放快照之后的区块
+	public static final String HASH_REPLICA_SNAPSHOT = "snapshot/cc_hash.snap";
+
+	// 本地副本写入快照的间隔（毫秒）
+	public static final long HASH_REPLICA_SNAPSHOT_INTERVAL = 60000;
+
+	// 是否启用cc_authority的本地基数树索引，启用后权限判断不调用链码
+	public static final boolean AUTHORITY_INDEX_ENABLED = true;
+
+	// 权限索引允许的陈旧时长（毫秒），超过时权限判断回退到读取企业记录
+	public static final long AUTHORITY_INDEX_MAX_STALENESS = 5000;
+
+	// 权限索引查询链高度、补齐缺失区块的间隔（毫秒）
+	public static final long AUTHORITY_INDEX_SYNC_INTERVAL = 1000;
+
+	// 是否启用已注册标识的布隆过滤器，启用后未注册标识的读取在本地直接返回
+	public static final boolean HASH_FILTER_ENABLED = true;
+
+	// 布隆过滤器第一级的设计容量（标识数），写满后追加容量翻倍的一级
+	public static final int HASH_FILTER_CAPACITY = 1 << 20;
+
+	// 布隆过滤器各级合计的误判率上限
+	public static final double HASH_FILTER_FALSE_POSITIVE_RATE = 0.001;
+
+	// 映射数据hash写入日志（outbox）所在目录，相对于工作目录
+	public static final String HASH_OUTBOX_DIR = "outbox";
+
+	// 映射数据hash写入日志单个分段文件的大小（字节），该分段及更早分段内的记录全部提交后删除该分段
+	public static final int HASH_OUTBOX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	// 写入日志中提交失败的映射数据hash重新提交的间隔（毫秒）
+	public static final long HASH_OUTBOX_RETRY_DELAY = 5000;
+
+	// 写入日志中一笔映射数据hash最多提交的次数，仍未成功的写入与被链码拒绝的写入一起移入parked.log
+	public static final int HASH_OUTBOX_MAX_ATTEMPTS = 720;
+
+	// 映射数据hash读取缓存的容量（标识数）
+	public static final int HASH_CACHE_SIZE = 100000;
+
+	// 映射数据hash读取缓存的有效期（毫秒）
+	public static final long HASH_CACHE_TTL = 60000;
+
+	// 批量读取映射数据hash时，单次提案包含的标识数上限
+	public static final int HASH_QUERY_CHUNK_SIZE = 1000;
+
+	// 批量读取映射数据hash时，单次提案中标识的总字节数上限，远低于gRPC默认的4MB消息上限
+	public static final int HASH_QUERY_CHUNK_BYTES = 512 * 1024;
+
+	// 本地指标接口（Prometheus文本格式，路径/metrics）监听的地址
+	public static final String METRICS_HOST = "127.0.0.1";
+
+	// 本地指标接口监听的端口，为0时不启动
+	public static final int METRICS_PORT = 9464;
+
+	// 企业公钥的算法，公钥以X.509编码后base64的形式登记在cc_authority中
+	public static final String PUBLIC_KEY_ALGORITHM = "RSA";
+
+	// DHT操作签名的算法
+	public static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+	// 批量验证签名的并行度
+	public static final int SIGNATURE_VERIFY_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
 	public static final String BUPT_PUB_KRY = "MIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQDjL/WBdYV/PgXsdPwkf8Ch818H8bO7+01/O+bWT2SszP32RVaJ59is/dfANcsUg/RpN3LpuJtQPXGDJA0fVKgLGnsSNFeexiIxaZH4KHjqp5/YS2pkp7WI4QBaYGuGQn0rtLvWuiRbN7DRKNOGYt7ITY7pcLopurXtmAzNKMApmwIDAQAB";
 
 	public static final String BNU_PUB_KRY = "MIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQCk92g4MsLxVN9+i2cHH7VRymMrafjhJ5QZhjtE3lm+TMVm7rRye/QjEBhh6eGKLCA60itucJ836t8WcxZ+MR/sXZDzCCRO7ShJpJOR/ZHXSeeNvOH6cAeSYbNyQ1FN+5sChUqMwbOVdme2Afv//Bj2kvTwNqDCG029MQf7RwbYhQIDAQAB";
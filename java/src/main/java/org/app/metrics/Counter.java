@@ -0,0 +1,49 @@
+package org.app.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter, one value per combination of label values.
+ */
+public class Counter extends Metrics.Family<Counter.Child> {
+
+	Counter(String name, String help, String[] labelNames) {
+		super(name, help, labelNames);
+	}
+
+	public static class Child {
+
+		private final LongAdder value = new LongAdder();
+
+		public void inc() {
+			value.increment();
+		}
+
+		public void inc(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	@Override
+	Child newChild() {
+		return new Child();
+	}
+
+	@Override
+	String type() {
+		return "counter";
+	}
+
+	@Override
+	void write(Appendable out, String labels, Child child) throws IOException {
+		out.append(name);
+		if (!labels.isEmpty())
+			out.append('{').append(labels).append('}');
+		out.append(' ').append(Long.toString(child.get())).append('\n');
+	}
+}
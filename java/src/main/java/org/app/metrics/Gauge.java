@@ -0,0 +1,44 @@
+package org.app.metrics;
+
+import java.io.IOException;
+
+/**
+ * Value that can go up and down, one value per combination of label values.
+ */
+public class Gauge extends Metrics.Family<Gauge.Child> {
+
+	Gauge(String name, String help, String[] labelNames) {
+		super(name, help, labelNames);
+	}
+
+	public static class Child {
+
+		private volatile double value;
+
+		public void set(double value) {
+			this.value = value;
+		}
+
+		public double get() {
+			return value;
+		}
+	}
+
+	@Override
+	Child newChild() {
+		return new Child();
+	}
+
+	@Override
+	String type() {
+		return "gauge";
+	}
+
+	@Override
+	void write(Appendable out, String labels, Child child) throws IOException {
+		out.append(name);
+		if (!labels.isEmpty())
+			out.append('{').append(labels).append('}');
+		out.append(' ').append(Double.toString(child.get())).append('\n');
+	}
+}
@@ -0,0 +1,95 @@
+package org.app.metrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets from 500 microseconds to 10 seconds,
+ * recorded in nanoseconds and exported in seconds.
+ */
+public class Histogram extends Metrics.Family<Histogram.Child> {
+
+	private static final double[] BUCKETS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1,
+			2.5, 5, 10 };
+	private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+	private static final String[] BUCKET_LABELS = new String[BUCKETS.length + 1];
+
+	static {
+		for (int i = 0; i < BUCKETS.length; i++) {
+			BUCKET_NANOS[i] = (long) (BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+			BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKETS[i]).toPlainString();
+		}
+		BUCKET_LABELS[BUCKETS.length] = "+Inf";
+	}
+
+	Histogram(String name, String help, String[] labelNames) {
+		super(name, help, labelNames);
+	}
+
+	public static class Child {
+
+		// the last slot counts the values above the largest bucket
+		private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+		private final LongAdder sum = new LongAdder();
+
+		Child() {
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = new LongAdder();
+		}
+
+		/**
+		 * Record one observation.
+		 * 
+		 * @param nanos
+		 */
+		public void observe(long nanos) {
+			int i = 0;
+			while (i < BUCKET_NANOS.length && nanos > BUCKET_NANOS[i])
+				i++;
+			counts[i].increment();
+			sum.add(nanos);
+		}
+
+		/**
+		 * Record the time elapsed since a System.nanoTime() reading.
+		 * 
+		 * @param startNanos
+		 */
+		public void observeSince(long startNanos) {
+			observe(System.nanoTime() - startNanos);
+		}
+
+		public long getCount() {
+			long count = 0;
+			for (LongAdder c : counts)
+				count += c.sum();
+			return count;
+		}
+	}
+
+	@Override
+	Child newChild() {
+		return new Child();
+	}
+
+	@Override
+	String type() {
+		return "histogram";
+	}
+
+	@Override
+	void write(Appendable out, String labels, Child child) throws IOException {
+		String prefix = labels.isEmpty() ? "" : labels + ",";
+		long cumulative = 0;
+		for (int i = 0; i < child.counts.length; i++) {
+			cumulative += child.counts[i].sum();
+			out.append(name).append("_bucket{").append(prefix).append("le=\"").append(BUCKET_LABELS[i]).append("\"} ")
+					.append(Long.toString(cumulative)).append('\n');
+		}
+		String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+		out.append(name).append("_sum").append(suffix).append(Double.toString(child.sum.sum() / 1e9)).append('\n');
+		out.append(name).append("_count").append(suffix).append(Long.toString(cumulative)).append('\n');
+	}
+}
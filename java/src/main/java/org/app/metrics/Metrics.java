@@ -0,0 +1,149 @@
+package org.app.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of the client metrics, exported in the Prometheus
+ * text exposition format. Metrics are created once, usually as static fields
+ * of the class that records them, and label children are looked up once and
+ * kept where the label values are fixed, so recording is a bucket search and
+ * a few LongAdder increments.
+ */
+public class Metrics {
+
+	private static final Map<String, Family<?>> families = new ConcurrentHashMap<>();
+	private static final List<Family<?>> ordered = new ArrayList<>();
+
+	/**
+	 * Return the counter with the given name, creating it on first use.
+	 * 
+	 * @param name
+	 * @param help
+	 * @param labelNames
+	 * @return
+	 */
+	public static Counter counter(String name, String help, String... labelNames) {
+		return register(name, new Counter(name, help, labelNames), Counter.class);
+	}
+
+	/**
+	 * Return the gauge with the given name, creating it on first use.
+	 * 
+	 * @param name
+	 * @param help
+	 * @param labelNames
+	 * @return
+	 */
+	public static Gauge gauge(String name, String help, String... labelNames) {
+		return register(name, new Gauge(name, help, labelNames), Gauge.class);
+	}
+
+	/**
+	 * Return the latency histogram with the given name, creating it on first use.
+	 * 
+	 * @param name
+	 * @param help
+	 * @param labelNames
+	 * @return
+	 */
+	public static Histogram histogram(String name, String help, String... labelNames) {
+		return register(name, new Histogram(name, help, labelNames), Histogram.class);
+	}
+
+	private static synchronized <T extends Family<?>> T register(String name, T family, Class<T> type) {
+		Family<?> existing = families.get(name);
+		if (existing != null) {
+			if (!type.isInstance(existing))
+				throw new IllegalArgumentException("Metric " + name + " is already registered as " + existing.type());
+			return type.cast(existing);
+		}
+		families.put(name, family);
+		ordered.add(family);
+		return family;
+	}
+
+	/**
+	 * Write every registered metric in the Prometheus text format.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(Appendable out) throws IOException {
+		List<Family<?>> snapshot;
+		synchronized (Metrics.class) {
+			snapshot = new ArrayList<>(ordered);
+		}
+		for (Family<?> family : snapshot) {
+			out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+			out.append("# TYPE ").append(family.name).append(' ').append(family.type()).append('\n');
+			family.write(out);
+		}
+	}
+
+	private static String escapeHelp(String help) {
+		return help.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+
+	/**
+	 * A metric name with its label children.
+	 */
+	static abstract class Family<C> {
+
+		final String name;
+		final String help;
+		final String[] labelNames;
+		private final Map<List<String>, C> children = new ConcurrentHashMap<>();
+
+		Family(String name, String help, String[] labelNames) {
+			this.name = name;
+			this.help = help;
+			this.labelNames = labelNames;
+		}
+
+		/**
+		 * Return the child for the given label values, in the order of the label
+		 * names.
+		 * 
+		 * @param labelValues
+		 * @return
+		 */
+		public C labels(String... labelValues) {
+			if (labelValues.length != labelNames.length)
+				throw new IllegalArgumentException(
+						"Metric " + name + " expects " + labelNames.length + " label values");
+			List<String> key = Arrays.asList(labelValues);
+			C child = children.get(key);
+			if (child == null)
+				child = children.computeIfAbsent(key, k -> newChild());
+			return child;
+		}
+
+		abstract C newChild();
+
+		abstract String type();
+
+		abstract void write(Appendable out, String labels, C child) throws IOException;
+
+		void write(Appendable out) throws IOException {
+			for (Map.Entry<List<String>, C> entry : children.entrySet())
+				write(out, labels(entry.getKey()), entry.getValue());
+		}
+
+		private String labels(List<String> values) {
+			if (values.isEmpty())
+				return "";
+			StringBuilder buffer = new StringBuilder();
+			for (int i = 0; i < values.size(); i++) {
+				buffer.append(i == 0 ? "" : ",").append(labelNames[i]).append("=\"");
+				String value = values.get(i) == null ? "" : values.get(i);
+				buffer.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+			}
+			return buffer.toString();
+		}
+	}
+}
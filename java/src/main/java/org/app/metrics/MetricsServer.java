@@ -0,0 +1,61 @@
+package org.app.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Minimal HTTP endpoint serving the registered metrics at /metrics for a
+ * Prometheus scraper, on a single daemon thread.
+ */
+public class MetricsServer {
+
+	private final HttpServer server;
+
+	/**
+	 * Bind the endpoint.
+	 * 
+	 * @param host
+	 * @param port
+	 * @throws IOException
+	 */
+	public MetricsServer(String host, int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		server.createContext("/metrics", exchange -> {
+			try {
+				StringBuilder body = new StringBuilder(8192);
+				Metrics.write(body);
+				byte[] bytes = body.toString().getBytes(UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, bytes.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(bytes);
+				}
+			} finally {
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "metrics-server");
+			t.setDaemon(true);
+			return t;
+		}));
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+}
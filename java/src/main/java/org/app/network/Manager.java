@@ -5,7 +5,9 @@ import org.app.client.FabricClient;
 import org.app.config.Config;
 import org.app.user.UserContext;
 import org.app.util.Util;
+import org.hyperledger.fabric.protos.peer.Query;
 import org.hyperledger.fabric.sdk.*;
+import org.hyperledger.fabric.sdk.exception.TransactionException;
 import org.hyperledger.fabric.sdk.security.CryptoSuite;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -14,6 +16,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,7 +36,20 @@ public class Manager {
     private FabricClient fabClient;
 
     private Peer[] entrys;
+    private Peer[] peers;
 
+    // 各步骤中对每个节点的操作并行执行
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "manager");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 启动Fabric网络：创建通道、节点加入通道、在各节点上安装链码并实例化。
+     * 每一步先查询已有的状态（节点已加入的通道、已安装和已实例化的链码版本），已完成的步骤直接跳过，
+     * 因此重复运行不会失败；同一步骤中对各节点、各链码的操作并行执行。
+     */
     private Manager(JSONObject jsonObject) throws JSONException {
         // 读取Json信息
         JSONArray entryArr = jsonObject.getJSONArray("entry");
@@ -47,11 +66,14 @@ public class Manager {
             peers_name[i] = "peer" + i;
             peers_url[i] = "grpc://" + peerArr.getJSONObject(i).getString("ip") + ":" + peerArr.getJSONObject(i).getString("port");
         }
+        String[] all_name = concat(entrys_name, peers_name);
+        String[] all_url = concat(entrys_url, peers_url);
+        long start = System.currentTimeMillis();
 
         // 创建通道
+        Set<String> joinedUrls = new HashSet<>();
         try {
             CryptoSuite.Factory.getCryptoSuite();
-            Util.cleanUp();
             // 启动Fabric网络时，向证书颁发机构（CA）注册管理员用户
             UserContext org1Admin = new UserContext();
             File pkFolder1 = new File(Config.ORG1_USR_ADMIN_PK);
@@ -65,115 +87,210 @@ public class Manager {
             org1Admin.setName(Config.ADMIN);
             fabClient = new FabricClient(org1Admin);
             orderer = fabClient.getInstance().newOrderer(Config.ORDERER_NAME, Config.ORDERER_URL);
-            ChannelConfiguration channelConfiguration = new ChannelConfiguration(new File(Config.CHANNEL_CONFIG_PATH));
-            byte[] channelConfigurationSignatures = fabClient.getInstance()
-                    .getChannelConfigurationSignature(channelConfiguration, org1Admin);
-            mychannel = fabClient.getInstance().newChannel(Config.CHANNEL_NAME, orderer, channelConfiguration,
-                    channelConfigurationSignatures);
-            Logger.getLogger(Manager.class.getName()).log(Level.INFO, "成功创建Channel: "+ mychannel.getName());
+
+            // 查询各节点已加入的通道
+            List<CompletableFuture<Boolean>> probes = new ArrayList<>();
+            for (int p = 0; p < all_url.length; p++) {
+                String name = all_name[p], url = all_url[p];
+                probes.add(CompletableFuture.supplyAsync(() -> joined(name, url), executor));
+            }
+            for (int p = 0; p < all_url.length; p++) {
+                if (probes.get(p).join())
+                    joinedUrls.add(all_url[p]);
+            }
+
+            mychannel = joinedUrls.isEmpty() ? createChannel(org1Admin) : null;
+            if (mychannel == null) {
+                mychannel = fabClient.getInstance().newChannel(Config.CHANNEL_NAME);
+                mychannel.addOrderer(orderer);
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, "Channel " + Config.CHANNEL_NAME + " 已存在，"
+                        + joinedUrls.size() + " 个节点已加入");
+            }
         } catch (Exception e) {
             System.out.println("Channel创建失败！");
             e.printStackTrace();
         }
-        // entry节点加入通道
+        // 全部节点并行加入通道，已加入的节点只添加到通道对象
         try {
-            // Join Entrys
-            Logger.getLogger(Util.class.getName()).log(Level.INFO, "Entry节点正在加入 " + mychannel.getName() + " ...");
-            entrys = new Peer[entryArr.length()];
-            for (int p = 0; p < entrys.length; p++) {
-                entrys[p] = fabClient.getInstance().newPeer(entrys_name[p], entrys_url[p]);
-                mychannel.joinPeer(entrys[p]);
+            Logger.getLogger(Util.class.getName()).log(Level.INFO, "节点正在加入 " + mychannel.getName() + " ...");
+            peers = new Peer[all_url.length];
+            List<CompletableFuture<Void>> joins = new ArrayList<>();
+            for (int p = 0; p < peers.length; p++) {
+                peers[p] = fabClient.getInstance().newPeer(all_name[p], all_url[p]);
+                Peer peer = peers[p];
+                boolean joined = joinedUrls.contains(all_url[p]);
+                joins.add(CompletableFuture.runAsync(() -> join(peer, joined), executor));
             }
-            mychannel.addOrderer(orderer);
+            awaitAll(joins);
+            entrys = Arrays.copyOf(peers, entrys_url.length);
             mychannel.initialize();
 
-            Collection peers = mychannel.getPeers();
-            for (Object peer : peers) {
-                Peer pr = (Peer) peer;
-                Logger.getLogger(Manager.class.getName()).log(Level.INFO, pr.getName() + " 成功加入 " + mychannel.getName() + ", 地址是 " + pr.getUrl());
+            Logger.getLogger(Manager.class.getName()).log(Level.INFO, "【系统提示】所有节点已成功加入 " + mychannel.getName());
+
+            for (Peer peer : mychannel.getPeers()) {
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, "-> " + peer.getName() + " 的地址是 " + peer.getUrl());
             }
         } catch (Exception e) {
-            System.out.println("Entry节点加入Channel失败！");
+            System.out.println("节点加入Channel失败！");
             e.printStackTrace();
         }
-        // 安装链码
+        // 在全部节点上并行安装两个链码，已安装相同版本的跳过；实例化提案会发往通道中的全部节点
         try {
-            // Deploy chaincode
-            List<Peer> org1Peers = new ArrayList<>();
-            for (int p = 0; p < entrys.length; p++) {
-                org1Peers.add(entrys[p]);
-            }
-            // 链码1
-            Collection<ProposalResponse> response = fabClient.deployChainCode(Config.CHAINCODE_1_NAME,
-                    Config.CHAINCODE_1_PATH, Config.CHAINCODE_ROOT_DIR, TransactionRequest.Type.GO_LANG.toString(),
-                    Config.CHAINCODE_1_VERSION, org1Peers);
-            int i = 0;
-            for (ProposalResponse res : response) {
-                Logger.getLogger(Manager.class.getName()).log(Level.INFO,
-                        entrys_name[i++] + " 安装链码 " + Config.CHAINCODE_1_NAME + " - " + res.getStatus());
-            }
-            // 链码2
-            Collection<ProposalResponse> response2 = fabClient.deployChainCode(Config.CHAINCODE_2_NAME,
-                    Config.CHAINCODE_2_PATH, Config.CHAINCODE_ROOT_DIR, TransactionRequest.Type.GO_LANG.toString(),
-                    Config.CHAINCODE_2_VERSION, org1Peers);
-            int j = 0;
-            for (ProposalResponse res : response2) {
-                Logger.getLogger(Manager.class.getName()).log(Level.INFO,
-                        entrys_name[j++] + " 安装链码 " + Config.CHAINCODE_2_NAME + " - " + res.getStatus());
+            List<CompletableFuture<Void>> installs = new ArrayList<>();
+            for (Peer peer : peers) {
+                installs.add(CompletableFuture.runAsync(() -> {
+                    Set<String> installed = installed(peer);
+                    install(peer, installed, Config.CHAINCODE_1_NAME, Config.CHAINCODE_1_PATH, Config.CHAINCODE_1_VERSION);
+                    install(peer, installed, Config.CHAINCODE_2_NAME, Config.CHAINCODE_2_PATH, Config.CHAINCODE_2_VERSION);
+                }, executor));
             }
+            awaitAll(installs);
         } catch (Exception e) {
             System.out.println("安装链码失败！");
             e.printStackTrace();
         }
-        // 实例化链码
+        // 并行实例化两个链码，已实例化相同版本的跳过
         try {
-            // Instantiate Chaincode
             ChannelClient channelClient = new ChannelClient(mychannel.getName(), mychannel, fabClient);
-            String[] arguments = { "" };
-            // 链码1
-            Collection<ProposalResponse> response = channelClient.instantiateChainCode(Config.CHAINCODE_1_NAME, Config.CHAINCODE_1_VERSION,
-                    Config.CHAINCODE_1_PATH, TransactionRequest.Type.GO_LANG.toString(), "init", arguments, null);
-            int i = 0;
-            for (ProposalResponse res : response) {
-                Logger.getLogger(Manager.class.getName()).log(Level.INFO,
-                        entrys_name[i++] + " 实例化链码 " + Config.CHAINCODE_1_NAME + " - " + res.getStatus());
-            }
-            // 链码2
-            Collection<ProposalResponse> response2 = channelClient.instantiateChainCode(Config.CHAINCODE_2_NAME, Config.CHAINCODE_2_VERSION,
-                    Config.CHAINCODE_2_PATH, TransactionRequest.Type.GO_LANG.toString(), "init", arguments, null);
-            int j = 0;
-            for (ProposalResponse res : response2) {
-                Logger.getLogger(Manager.class.getName()).log(Level.INFO,
-                        entrys_name[j++] + " 实例化链码 " + Config.CHAINCODE_2_NAME + " - " + res.getStatus());
-            }
+            Set<String> instantiated = instantiated(entrys[0]);
+            List<CompletableFuture<Void>> instantiations = new ArrayList<>();
+            if (!instantiated.contains(Config.CHAINCODE_1_NAME + ":" + Config.CHAINCODE_1_VERSION))
+                instantiations.add(CompletableFuture.runAsync(() -> instantiate(channelClient, Config.CHAINCODE_1_NAME,
+                        Config.CHAINCODE_1_PATH, Config.CHAINCODE_1_VERSION), executor));
+            else
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, "链码 " + Config.CHAINCODE_1_NAME + " 已实例化，跳过");
+            if (!instantiated.contains(Config.CHAINCODE_2_NAME + ":" + Config.CHAINCODE_2_VERSION))
+                instantiations.add(CompletableFuture.runAsync(() -> instantiate(channelClient, Config.CHAINCODE_2_NAME,
+                        Config.CHAINCODE_2_PATH, Config.CHAINCODE_2_VERSION), executor));
+            else
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, "链码 " + Config.CHAINCODE_2_NAME + " 已实例化，跳过");
+            awaitAll(instantiations);
         } catch (Exception e) {
             System.out.println("实例化链码失败！");
             e.printStackTrace();
         }
-        // peer节点加入通道
+        executor.shutdown();
+        Logger.getLogger(Manager.class.getName()).log(Level.INFO, "【系统提示】网络启动完成，耗时 "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    // 创建通道，orderer拒绝（通常是通道已存在）时返回null
+    private Channel createChannel(UserContext org1Admin) throws Exception {
+        ChannelConfiguration channelConfiguration = new ChannelConfiguration(new File(Config.CHANNEL_CONFIG_PATH));
+        byte[] channelConfigurationSignatures = fabClient.getInstance()
+                .getChannelConfigurationSignature(channelConfiguration, org1Admin);
+        try {
+            Channel channel = fabClient.getInstance().newChannel(Config.CHANNEL_NAME, orderer, channelConfiguration,
+                    channelConfigurationSignatures);
+            Logger.getLogger(Manager.class.getName()).log(Level.INFO, "成功创建Channel: " + channel.getName());
+            return channel;
+        } catch (TransactionException e) {
+            Logger.getLogger(Manager.class.getName()).log(Level.INFO, "Channel " + Config.CHANNEL_NAME
+                    + " 未能创建，按已存在处理：" + e.getMessage());
+            return null;
+        }
+    }
+
+    // 节点是否已加入通道，查询失败时按未加入处理
+    private boolean joined(String name, String url){
         try {
-            // Join Peers
-            Logger.getLogger(Util.class.getName()).log(Level.INFO, "Peer节点正在加入 " + mychannel.getName() + " ...");
-            Peer[] peers1 = new Peer[peerArr.length()];
-            for (int p = 0; p < peers1.length; p++) {
-                peers1[p] = fabClient.getInstance().newPeer(peers_name[p], peers_url[p]);
-                mychannel.joinPeer(peers1[p]);
+            Peer probe = fabClient.getInstance().newPeer(name, url);
+            return fabClient.getInstance().queryChannels(probe).contains(Config.CHANNEL_NAME);
+        } catch (Exception e) {
+            Logger.getLogger(Manager.class.getName()).log(Level.WARNING, "查询 " + name + " 已加入的通道失败", e);
+            return false;
+        }
+    }
+
+    private void join(Peer peer, boolean joined){
+        try {
+            if (joined) {
+                mychannel.addPeer(peer);
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, peer.getName() + " 已在 " + mychannel.getName() + " 中，跳过");
+            } else {
+                mychannel.joinPeer(peer);
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, peer.getName() + " 成功加入 " + mychannel.getName() + ", 地址是 " + peer.getUrl());
             }
-            mychannel.addOrderer(orderer);
-            mychannel.initialize();
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
 
-            Logger.getLogger(Manager.class.getName()).log(Level.INFO, "【系统提示】所有节点已成功加入 " + mychannel.getName());
+    // 节点上已安装的链码（名称:版本）；SDK查询结束时会关闭所用peer的连接，因此用单独的Peer对象查询
+    private Set<String> installed(Peer peer){
+        try {
+            Peer probe = fabClient.getInstance().newPeer(peer.getName(), peer.getUrl());
+            Set<String> installed = new HashSet<>();
+            for (Query.ChaincodeInfo info : fabClient.getInstance().queryInstalledChaincodes(probe))
+                installed.add(info.getName() + ":" + info.getVersion());
+            return installed;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
 
-            Collection peers = mychannel.getPeers();
-            for (Object peer : peers) {
-                Peer pr = (Peer) peer;
-                Logger.getLogger(Manager.class.getName()).log(Level.INFO, "-> " + pr.getName() + " 的地址是 " + pr.getUrl());
+    // 通道中已实例化的链码（名称:版本）；SDK只允许查询通道中的peer，因此用单独的客户端和通道对象连接该节点查询，
+    // 查询结束后关闭，不影响mychannel中的peer
+    private Set<String> instantiated(Peer peer) throws Exception {
+        HFClient client = new FabricClient(fabClient.getInstance().getUserContext()).getInstance();
+        Channel channel = client.newChannel(mychannel.getName());
+        try {
+            channel.addOrderer(client.newOrderer(orderer.getName(), orderer.getUrl()));
+            channel.addPeer(client.newPeer(peer.getName(), peer.getUrl()));
+            channel.initialize();
+            Set<String> instantiated = new HashSet<>();
+            for (Query.ChaincodeInfo info : channel.queryInstantiatedChaincodes(channel.getPeers().iterator().next()))
+                instantiated.add(info.getName() + ":" + info.getVersion());
+            return instantiated;
+        } finally {
+            channel.shutdown(true);
+        }
+    }
+
+    private void install(Peer peer, Set<String> installed, String name, String path, String version){
+        try {
+            if (installed.contains(name + ":" + version)) {
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, peer.getName() + " 已安装链码 " + name + "，跳过");
+                return;
+            }
+            Collection<ProposalResponse> response = fabClient.deployChainCode(name, path, Config.CHAINCODE_ROOT_DIR,
+                    TransactionRequest.Type.GO_LANG.toString(), version, Collections.singletonList(peer));
+            for (ProposalResponse res : response) {
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, peer.getName() + " 安装链码 " + name + " - " + res.getStatus());
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            throw new CompletionException(e);
         }
     }
 
+    private void instantiate(ChannelClient channelClient, String name, String path, String version){
+        try {
+            String[] arguments = { "" };
+            Collection<ProposalResponse> response = channelClient.instantiateChainCode(name, version, path,
+                    TransactionRequest.Type.GO_LANG.toString(), "init", arguments, null);
+            for (ProposalResponse res : response) {
+                Logger.getLogger(Manager.class.getName()).log(Level.INFO, res.getPeer().getName() + " 实例化链码 " + name + " - " + res.getStatus());
+            }
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // 等待全部操作完成，有失败时抛出第一个失败的原因
+    private static void awaitAll(List<CompletableFuture<Void>> futures) throws Exception {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private static String[] concat(String[] a, String[] b){
+        String[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
     public static String getIP(String paramFile) throws Exception {
         Properties props = new Properties();
         props.load(new FileInputStream(new File(paramFile)));
@@ -14,7 +14,6 @@ package org.app.user;
 
 import org.app.client.CAClient;
 import org.app.config.Config;
-import org.app.util.Util;
 
 /**
  * 
@@ -26,7 +25,6 @@ public class RegisterEnrollUser {
 
 	public static void main(String args[]) {
 		try {
-			Util.cleanUp();
 			String caUrl = Config.CA_ORG1_URL;
 			CAClient caClient = new CAClient(caUrl, null);
 			// Enroll Admin to Org1MSP
@@ -32,7 +32,7 @@ public class UserContext implements User, Serializable {
 	protected Set<String> roles;
 	protected String account;
 	protected String affiliation;
-	protected Enrollment enrollment;
+	protected volatile Enrollment enrollment;
 	protected String mspId;
 	
 	public void setName(String name) {
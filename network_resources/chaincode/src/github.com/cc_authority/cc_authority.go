@@ -50,6 +50,8 @@ func (t *IdentityData) Invoke(stub shim.ChaincodeStubInterface) pb.Response {
 		return t.initOrg(stub, args)
 	} else if function == "queryInfoByOrg" {
 		return t.queryInfoByOrg(stub, args)
+	} else if function == "queryAllOrgs" {
+		return t.queryAllOrgs(stub, args)
 	} 
 
 	fmt.Println("invoke did not find func: " + function) //error
@@ -228,3 +230,22 @@ func (t *IdentityData) queryInfoByOrg(stub shim.ChaincodeStubInterface, args []s
 	}
 	return shim.Success(queryResults)
 }
+
+// ===========================================================================================
+// queryAllOrgs - return every org record with a range query over the whole namespace,
+// in the same format as queryInfoByOrg. Used by clients to build a local authority index.
+// ===========================================================================================
+func (t *IdentityData) queryAllOrgs(stub shim.ChaincodeStubInterface, args []string) pb.Response {
+
+	resultsIterator, err := stub.GetStateByRange("", "")
+	if err != nil {
+		return shim.Error(err.Error())
+	}
+	defer resultsIterator.Close()
+
+	buffer, err := constructQueryResponseFromIterator(resultsIterator)
+	if err != nil {
+		return shim.Error(err.Error())
+	}
+	return shim.Success(buffer.Bytes())
+}
@@ -45,6 +45,12 @@ func (t *IdentityData) Invoke(stub shim.ChaincodeStubInterface) pb.Response {
 	// Handle different functions 
 	if function == "invokeMappingDataHash" { //create identity
 		return t.invokeMappingDataHash(stub, args)
+	} else if function == "invokeMappingDataHashBatch" { //create identities in one transaction
+		return t.invokeMappingDataHashBatch(stub, args)
+	} else if function == "getHashByIdentifier" {
+		return t.getHashByIdentifier(stub, args)
+	} else if function == "getHashesByIdentifiers" {
+		return t.getHashesByIdentifiers(stub, args)
 	} else if function == "queryHashByIdentifier" {
 		return t.queryHashByIdentifier(stub, args)
 	} 
@@ -76,16 +82,8 @@ func (t *IdentityData) invokeMappingDataHash(stub shim.ChaincodeStubInterface, a
 	mappingData_hash := args[1]
 	//invoke_time := time.Now().Unix()
 
-	// ==== Create identity object and marshal to JSON ====
-	objectType := "identity"
-	identity := &identity{objectType, identifier, mappingData_hash}
-	identityJSONasBytes, err := json.Marshal(identity)
-	if err != nil {
-		return shim.Error(err.Error())
-	}
-
-	// === Save identity to state ===
-	err = stub.PutState(identifier, identityJSONasBytes)
+	// ==== Create identity object and save to state ====
+	err = putIdentity(stub, identifier, mappingData_hash)
 	if err != nil {
 		return shim.Error(err.Error())
 	}
@@ -106,6 +104,47 @@ func (t *IdentityData) invokeMappingDataHash(stub shim.ChaincodeStubInterface, a
 	return shim.Success(nil)
 }
 
+// ============================================================
+// invokeMappingDataHashBatch - create several Identities in one transaction,
+// args are identifier/hash pairs: id1, hash1, id2, hash2, ...
+// ============================================================
+func (t *IdentityData) invokeMappingDataHashBatch(stub shim.ChaincodeStubInterface, args []string) pb.Response {
+	if len(args) == 0 || len(args)%2 != 0 {
+		return shim.Error("Incorrect number of arguments. Expecting identifier/hash pairs")
+	}
+
+	// ==== Input sanitation ====
+	fmt.Println("- start invoke Hash batch")
+	for i := 0; i < len(args); i++ {
+		if len(args[i]) <= 0 {
+			return shim.Error(fmt.Sprintf("argument %d must be a non-empty string", i+1))
+		}
+	}
+
+	for i := 0; i < len(args); i += 2 {
+		err := putIdentity(stub, args[i], args[i+1])
+		if err != nil {
+			return shim.Error(err.Error())
+		}
+	}
+
+	fmt.Printf("- end invoke Hash batch, %d identities\n", len(args)/2)
+	return shim.Success(nil)
+}
+
+// ============================================================
+// putIdentity - marshal an identity to JSON and save it under its identifier
+// ============================================================
+func putIdentity(stub shim.ChaincodeStubInterface, identifier string, mappingData_hash string) error {
+	objectType := "identity"
+	identity := &identity{objectType, identifier, mappingData_hash}
+	identityJSONasBytes, err := json.Marshal(identity)
+	if err != nil {
+		return err
+	}
+	return stub.PutState(identifier, identityJSONasBytes)
+}
+
 // ===========================================================================================
 // constructQueryResponseFromIterator constructs a JSON array containing query results from
 // a given result iterator
@@ -178,3 +217,70 @@ func (t *IdentityData) queryHashByIdentifier(stub shim.ChaincodeStubInterface, a
 	}
 	return shim.Success(queryResults)
 }
+
+// ============================================================
+// getHashByIdentifier - point lookup of the mapping data hash stored under
+// an identifier, returns an empty payload if it has not been registered
+// ============================================================
+func (t *IdentityData) getHashByIdentifier(stub shim.ChaincodeStubInterface, args []string) pb.Response {
+
+	if len(args) != 1 {
+		return shim.Error("Incorrect number of arguments. Expecting 1")
+	}
+
+	mappingData_hash, err := getHash(stub, args[0])
+	if err != nil {
+		return shim.Error(err.Error())
+	}
+	return shim.Success(mappingData_hash)
+}
+
+// ============================================================
+// getHashesByIdentifiers - point lookup of several identifiers in one proposal,
+// returns a JSON object mapping each registered identifier to its hash;
+// unregistered identifiers are left out
+// ============================================================
+func (t *IdentityData) getHashesByIdentifiers(stub shim.ChaincodeStubInterface, args []string) pb.Response {
+
+	if len(args) < 1 {
+		return shim.Error("Incorrect number of arguments. Expecting at least 1")
+	}
+
+	hashes := make(map[string]string, len(args))
+	for _, identifier := range args {
+		mappingData_hash, err := getHash(stub, identifier)
+		if err != nil {
+			return shim.Error(err.Error())
+		}
+		if mappingData_hash != nil {
+			hashes[identifier] = string(mappingData_hash)
+		}
+	}
+
+	hashesJSONasBytes, err := json.Marshal(hashes)
+	if err != nil {
+		return shim.Error(err.Error())
+	}
+	return shim.Success(hashesJSONasBytes)
+}
+
+// ============================================================
+// getHash - read an identity by key and return only its mapping data hash,
+// nil if the identifier has not been registered
+// ============================================================
+func getHash(stub shim.ChaincodeStubInterface, identifier string) ([]byte, error) {
+	identityAsBytes, err := stub.GetState(identifier)
+	if err != nil {
+		return nil, err
+	}
+	if identityAsBytes == nil {
+		return nil, nil
+	}
+
+	var record identity
+	err = json.Unmarshal(identityAsBytes, &record)
+	if err != nil {
+		return nil, err
+	}
+	return []byte(record.MappingData_hash), nil
+}